@@ -0,0 +1,62 @@
+package com.octopod.methodscript.benchmarks;
+
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+import com.octopod.methodscript.CommandHelper;
+import com.octopod.methodscript.HeadlessRuntime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compiling and evaluating scripts of different lengths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark
+{
+	/**
+	 * The number of statements in the script.
+	 */
+	@Param({"1", "10", "100"})
+	public int statements;
+
+	private String script;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessRuntime.install();
+		script = Payloads.script(statements);
+	}
+
+	@Benchmark
+	public ParseTree compileRaw() throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return CommandHelper.compileRaw(script, false);
+	}
+
+	@Benchmark
+	public ParseTree compileRawCached() throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return CommandHelper.compileRaw(script, true);
+	}
+
+	@Benchmark
+	public Construct eval() throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return CommandHelper.eval(script, null, false);
+	}
+
+	@Benchmark
+	public Construct evalCached() throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return CommandHelper.eval(script, null, true);
+	}
+}
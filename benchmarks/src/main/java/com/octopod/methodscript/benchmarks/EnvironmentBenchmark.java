@@ -0,0 +1,52 @@
+package com.octopod.methodscript.benchmarks;
+
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Target;
+import com.octopod.methodscript.HeadlessRuntime;
+import com.octopod.methodscript.MSEnvironment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating environments, which clones CommandHelper's default environment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark
+{
+	/**
+	 * The number of variables in the environment being copied.
+	 */
+	@Param({"0", "10", "1000"})
+	public int variables;
+
+	private MSEnvironment template;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessRuntime.install();
+		template = new MSEnvironment();
+		for(int i = 0; i < variables; i++)
+		{
+			template.variables.set("var" + i, new CString("value" + i, Target.UNKNOWN));
+		}
+	}
+
+	@Benchmark
+	public MSEnvironment newEnvironment()
+	{
+		return new MSEnvironment();
+	}
+
+	@Benchmark
+	public MSEnvironment copyEnvironment()
+	{
+		return new MSEnvironment(template);
+	}
+}
@@ -0,0 +1,91 @@
+package com.octopod.methodscript.benchmarks;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.octopod.methodscript.CommandHelper;
+import com.octopod.methodscript.HeadlessRuntime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting Java objects into Constructs and back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallingBenchmark
+{
+	/**
+	 * The number of records (or numbers) in the payload.
+	 */
+	@Param({"10", "1000", "100000"})
+	public int size;
+
+	private List<Map<String, Object>> records;
+	private Payloads.Player[] players;
+	private long[] numbers;
+
+	private CArray playersConstruct;
+	private Construct numbersConstruct;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessRuntime.install();
+		records = Payloads.records(size);
+		players = Payloads.players(size);
+		numbers = Payloads.numbers(size);
+
+		playersConstruct = (CArray)CommandHelper.toConstruct(players);
+		numbersConstruct = CommandHelper.toConstruct(numbers);
+	}
+
+	@Benchmark
+	public Construct recordsToConstruct()
+	{
+		return CommandHelper.toConstruct(records);
+	}
+
+	@Benchmark
+	public Construct playersToConstruct()
+	{
+		return CommandHelper.toConstruct(players);
+	}
+
+	@Benchmark
+	public Construct numbersToConstruct()
+	{
+		return CommandHelper.toConstruct(numbers);
+	}
+
+	@Benchmark
+	public CArray recordsToLazyConstruct()
+	{
+		return CommandHelper.toLazyConstruct(records);
+	}
+
+	@Benchmark
+	public Payloads.Player[] playersFromConstruct()
+	{
+		Target t = Target.UNKNOWN;
+		Payloads.Player[] result = new Payloads.Player[size];
+		for(int i = 0; i < size; i++)
+		{
+			result[i] = CommandHelper.fromConstruct(playersConstruct.get(i, t), Payloads.Player.class);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long[] numbersFromConstruct()
+	{
+		return CommandHelper.fromConstruct(numbersConstruct, long[].class);
+	}
+}
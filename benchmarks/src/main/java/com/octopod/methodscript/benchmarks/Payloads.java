@@ -0,0 +1,109 @@
+package com.octopod.methodscript.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates the scripts and objects the benchmarks work on.
+ * Everything is seeded, so every run sees the same payloads.
+ */
+public final class Payloads
+{
+	private Payloads() {}
+
+	/**
+	 * A plain object, converted field by field.
+	 */
+	public static class Player
+	{
+		public String name;
+		public int level;
+		public double health;
+		public boolean online;
+		public long[] inventory;
+	}
+
+	/**
+	 * Creates a script with a mix of assignments, arithmetic, string and array functions.
+	 *
+	 * @param statements the number of statements
+	 * @return the script
+	 */
+	public static String script(int statements)
+	{
+		StringBuilder sb = new StringBuilder("@total = 0\n@names = array()\n");
+		for(int i = 0; i < statements; i++)
+		{
+			switch(i % 4)
+			{
+				case 0: sb.append("@total = @total + ").append(i).append(" * 2\n"); break;
+				case 1: sb.append("array_push(@names, 'player").append(i).append("')\n"); break;
+				case 2: sb.append("if(@total > ").append(i).append(", @total = @total - 1)\n"); break;
+				case 3: sb.append("@name").append(i).append(" = to_upper(concat('p', ").append(i).append("))\n"); break;
+			}
+		}
+		sb.append("@total");
+		return sb.toString();
+	}
+
+	/**
+	 * Creates records as maps of strings, numbers, booleans and nested lists.
+	 *
+	 * @param size the number of records
+	 * @return the records
+	 */
+	public static List<Map<String, Object>> records(int size)
+	{
+		Random random = new Random(size);
+		List<Map<String, Object>> records = new ArrayList<>(size);
+		for(int i = 0; i < size; i++)
+		{
+			Map<String, Object> record = new LinkedHashMap<>();
+			record.put("id", i);
+			record.put("name", "player" + i);
+			record.put("score", random.nextDouble() * 1000);
+			record.put("online", random.nextBoolean());
+			record.put("tags", Arrays.asList("tag" + (i % 7), "tag" + (i % 13)));
+			records.add(record);
+		}
+		return records;
+	}
+
+	/**
+	 * Creates players.
+	 *
+	 * @param size the number of players
+	 * @return the players
+	 */
+	public static Player[] players(int size)
+	{
+		Random random = new Random(size);
+		Player[] players = new Player[size];
+		for(int i = 0; i < size; i++)
+		{
+			Player player = new Player();
+			player.name = "player" + i;
+			player.level = random.nextInt(100);
+			player.health = random.nextDouble() * 20;
+			player.online = random.nextBoolean();
+			player.inventory = numbers(9);
+			players[i] = player;
+		}
+		return players;
+	}
+
+	/**
+	 * Creates random numbers.
+	 *
+	 * @param size the number of numbers
+	 * @return the numbers
+	 */
+	public static long[] numbers(int size)
+	{
+		return new Random(size).longs(size).toArray();
+	}
+}
@@ -0,0 +1,82 @@
+package com.octopod.methodscript.benchmarks;
+
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.octopod.methodscript.HeadlessRuntime;
+import com.octopod.methodscript.MSVariableList;
+import com.octopod.methodscript.VarKey;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures setting, getting and exporting variables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableListBenchmark
+{
+	/**
+	 * The number of variables in the list.
+	 */
+	@Param({"10", "100", "1000"})
+	public int variables;
+
+	private MSVariableList list;
+	private String[] names;
+	private VarKey[] keys;
+	private Construct value;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessRuntime.install();
+		list = new MSVariableList();
+		names = new String[variables];
+		keys = new VarKey[variables];
+		value = new CInt(42, Target.UNKNOWN);
+		for(int i = 0; i < variables; i++)
+		{
+			names[i] = "@var" + i;
+			keys[i] = VarKey.of(names[i]);
+			list.set(names[i], value);
+		}
+	}
+
+	@Benchmark
+	public void set()
+	{
+		for(String name: names) list.set(name, value);
+	}
+
+	@Benchmark
+	public void get(Blackhole blackhole)
+	{
+		for(String name: names) blackhole.consume(list.get(name));
+	}
+
+	@Benchmark
+	public void setByKey()
+	{
+		for(VarKey key: keys) list.set(key, value);
+	}
+
+	@Benchmark
+	public void getByKey(Blackhole blackhole)
+	{
+		for(VarKey key: keys) blackhole.consume(list.get(key));
+	}
+
+	@Benchmark
+	public Map<String, Construct> toMap()
+	{
+		return list.toMap();
+	}
+}
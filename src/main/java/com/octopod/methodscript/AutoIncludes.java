@@ -0,0 +1,156 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.AliasCore;
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.Procedure;
+import com.laytonsmith.core.Static;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the procedures defined by CommandHelper's auto_include.ms files.
+ * The auto includes are executed once, and the procedures they define are attached
+ * to each environment afterwards. The cache is rebuilt when an auto include file
+ * is added, removed or modified on disk.
+ * Only procedures are cached; any other side effects of the auto includes only happen when the cache is rebuilt.
+ */
+public class AutoIncludes
+{
+	/**
+	 * The procedures defined by the auto includes, along with the state of the files they came from.
+	 */
+	private static class Snapshot
+	{
+		final List<File> files;
+		final long[] modified;
+		final Map<String, Procedure> procedures;
+
+		Snapshot(List<File> files, long[] modified, Map<String, Procedure> procedures)
+		{
+			this.files = files;
+			this.modified = modified;
+			this.procedures = procedures;
+		}
+
+		boolean isCurrent(List<File> files)
+		{
+			if(!this.files.equals(files)) return false;
+			for(int i = 0; i < modified.length; i++)
+			{
+				if(this.files.get(i).lastModified() != modified[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	private static volatile Snapshot snapshot = null;
+
+	/**
+	 * Adds the procedures defined by the auto includes to an environment.
+	 * Unless the environment is concurrent, they are attached as a shared layer rather than copied,
+	 * and nothing is done if the environment already has the current ones.
+	 * Procedures the environment defined itself take precedence over them.
+	 *
+	 * @param environment the environment
+	 */
+	public static void register(MSEnvironment environment)
+	{
+		Map<String, Procedure> procedures = getProcedures();
+		Map<String, Procedure> handle = environment.procedures.handle;
+		if(handle instanceof LayeredProcedureMap)
+		{
+			((LayeredProcedureMap)handle).attach(AutoIncludes.class, procedures);
+		}
+		else if(!procedures.isEmpty())
+		{
+			environment.procedures.set(procedures);
+		}
+	}
+
+	/**
+	 * Gets the procedures defined by the auto includes, rebuilding the cache if any of the files have changed.
+	 *
+	 * @return an unmodifiable map of procedures
+	 */
+	public static Map<String, Procedure> getProcedures()
+	{
+		List<File> files = getFiles();
+
+		Snapshot s = snapshot;
+		if(s != null && s.isCurrent(files)) return s.procedures;
+
+		synchronized(AutoIncludes.class)
+		{
+			s = snapshot;
+			if(s == null || !s.isCurrent(files))
+			{
+				snapshot = s = load(files);
+			}
+			return s.procedures;
+		}
+	}
+
+	/**
+	 * Forces the auto includes to be executed again the next time they are needed.
+	 */
+	public static void invalidate()
+	{
+		snapshot = null;
+	}
+
+	/**
+	 * Executes the auto includes in a scratch environment and collects the procedures they define.
+	 *
+	 * @param files the auto include files
+	 * @return the snapshot
+	 */
+	private static Snapshot load(List<File> files)
+	{
+		long[] modified = new long[files.size()];
+		for(int i = 0; i < modified.length; i++)
+		{
+			modified[i] = files.get(i).lastModified();
+		}
+
+		if(files.isEmpty())
+		{
+			return new Snapshot(files, modified, Collections.emptyMap());
+		}
+
+		MSEnvironment scratch = new MSEnvironment();
+		Map<String, Procedure> before = scratch.procedures.toMap();
+
+		MethodScriptCompiler.registerAutoIncludes(scratch.getHandle(), null);
+
+		Map<String, Procedure> procedures = new HashMap<>();
+		for(Map.Entry<String, Procedure> entry: scratch.procedures.handle.entrySet())
+		{
+			if(before.get(entry.getKey()) != entry.getValue())
+			{
+				procedures.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return new Snapshot(files, modified, Collections.unmodifiableMap(procedures));
+	}
+
+	/**
+	 * Gets the auto include files CommandHelper has loaded.
+	 *
+	 * @return a copy of the list of files, which is empty if CommandHelper isn't loaded
+	 */
+	private static List<File> getFiles()
+	{
+		AliasCore core = Static.getAliasCore();
+		if(core == null || core.autoIncludes == null)
+		{
+			return Collections.emptyList();
+		}
+		return new ArrayList<>(core.autoIncludes);
+	}
+}
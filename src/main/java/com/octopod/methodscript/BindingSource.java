@@ -0,0 +1,91 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.Construct;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Supplies the variables for each row of a batch execution.
+ * Rows may be bound from several threads at once, so implementations must be safe to read concurrently.
+ */
+public interface BindingSource
+{
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	int size();
+
+	/**
+	 * Sets the variables of a row.
+	 *
+	 * @param row the index of the row
+	 * @param variables the variable list to set the row's variables in
+	 */
+	void bind(int row, MSVariableList variables);
+
+	/**
+	 * Creates a source where each row is a map of variable names and values.
+	 *
+	 * @param rows the rows
+	 * @return the binding source
+	 */
+	static BindingSource of(final List<? extends Map<String, Construct>> rows)
+	{
+		return new BindingSource()
+		{
+			public int size()
+			{
+				return rows.size();
+			}
+
+			public void bind(int row, MSVariableList variables)
+			{
+				variables.set(rows.get(row));
+			}
+		};
+	}
+
+	/**
+	 * Creates a source from columns of values, where each column is a variable
+	 * and the n-th row takes the n-th value of every column.
+	 * Every column must have the same length.
+	 *
+	 * @param columns a map of variable names and their values
+	 * @return the binding source
+	 */
+	static BindingSource columns(final Map<String, Construct[]> columns)
+	{
+		final String[] names = columns.keySet().toArray(new String[0]);
+		final Construct[][] values = new Construct[names.length][];
+		int size = -1;
+
+		for(int i = 0; i < names.length; i++)
+		{
+			values[i] = columns.get(names[i]);
+			if(size != -1 && values[i].length != size)
+				throw new IllegalArgumentException("Column " + names[i] + " has " + values[i].length + " rows, expected " + size);
+			size = values[i].length;
+		}
+
+		final int rows = Math.max(size, 0);
+
+		return new BindingSource()
+		{
+			public int size()
+			{
+				return rows;
+			}
+
+			public void bind(int row, MSVariableList variables)
+			{
+				for(int i = 0; i < names.length; i++)
+				{
+					variables.set(names[i], values[i][row]);
+				}
+			}
+		};
+	}
+}
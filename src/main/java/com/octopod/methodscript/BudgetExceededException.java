@@ -0,0 +1,37 @@
+package com.octopod.methodscript;
+
+/**
+ * Thrown when a MethodScript is stopped for going over its ExecutionBudget.
+ */
+public class BudgetExceededException extends RuntimeException
+{
+	/**
+	 * The limit that was passed.
+	 */
+	public enum Limit
+	{
+		WALL_TIME,
+		CPU_TIME,
+		ALLOCATION
+	}
+
+	private final Limit limit;
+	private final ExecutionBudget budget;
+
+	public BudgetExceededException(Limit limit, ExecutionBudget budget, Throwable cause)
+	{
+		super("Script exceeded its " + limit.name().toLowerCase().replace('_', ' ') + " limit: " + budget, cause);
+		this.limit = limit;
+		this.budget = budget;
+	}
+
+	public Limit getLimit()
+	{
+		return limit;
+	}
+
+	public ExecutionBudget getBudget()
+	{
+		return budget;
+	}
+}
@@ -0,0 +1,290 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.exceptions.CancelCommandException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches executions with an ExecutionBudget from a single daemon thread,
+ * and interrupts them once they go over budget or are cancelled.
+ * <p>
+ * Each watched execution runs in its own view of its environment (see <code>MSEnvironment.view()</code>),
+ * so interrupting it doesn't stop other scripts running in the same environment.
+ * The timer only runs while there are executions with limits to check.
+ */
+final class BudgetWatchdog
+{
+	/**
+	 * How often executions are checked.
+	 */
+	private static final long PERIOD_MILLIS = 5;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Executions with limits, which the timer checks. Additions and removals are synchronized on the set,
+	 * along with <code>schedule</code>.
+	 */
+	private static final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The periodic check, or null while there are no executions to check.
+	 */
+	private static ScheduledFuture<?> schedule = null;
+
+	/**
+	 * Created the first time an execution with limits is watched.
+	 */
+	private static class Timer
+	{
+		static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread thread = new Thread(r, "MethodScript-Budget");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * The reason given to scripts that were cancelled.
+	 */
+	private static final Object CANCELLED = new Object();
+
+	private BudgetWatchdog() {}
+
+	private static long cpuTime(Thread thread)
+	{
+		try
+		{
+			if(threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled())
+			{
+				return threads.getThreadCpuTime(thread.getId());
+			}
+		}
+		catch(RuntimeException e) {}
+		return -1;
+	}
+
+	/**
+	 * A script being executed on a thread.
+	 */
+	static final class Execution implements AutoCloseable
+	{
+		private final Thread thread;
+
+		/**
+		 * The view of the environment the script is executed in, whose interrupt only stops this script.
+		 */
+		private final MSEnvironment environment;
+		private final ExecutionBudget budget;
+
+		private final long start;
+		private final long startCpu;
+		private final long startAllocated;
+
+		/**
+		 * Why the script was stopped, or null if it wasn't.
+		 * Either a BudgetExceededException.Limit or CANCELLED.
+		 */
+		private volatile Object stopped = null;
+
+		private boolean closed = false;
+
+		private Execution(Thread thread, MSEnvironment environment, ExecutionBudget budget)
+		{
+			this.thread = thread;
+			this.environment = environment;
+			this.budget = budget;
+			this.start = System.nanoTime();
+			this.startCpu = budget.getCpuTimeNanos() > 0 ? cpuTime(thread) : -1;
+			this.startAllocated = budget.getMaxAllocatedBytes() > 0 ? ThreadAllocation.of(thread) : -1;
+		}
+
+		/**
+		 * Gets the environment the script must be executed in.
+		 *
+		 * @return a view of the watched environment
+		 */
+		MSEnvironment getEnvironment()
+		{
+			return environment;
+		}
+
+		private Object exceeded()
+		{
+			if(budget.getWallTimeNanos() > 0 && System.nanoTime() - start > budget.getWallTimeNanos())
+			{
+				return BudgetExceededException.Limit.WALL_TIME;
+			}
+
+			if(startCpu != -1)
+			{
+				long cpu = cpuTime(thread);
+				if(cpu != -1 && cpu - startCpu > budget.getCpuTimeNanos())
+				{
+					return BudgetExceededException.Limit.CPU_TIME;
+				}
+			}
+
+			if(startAllocated != -1)
+			{
+				long allocated = ThreadAllocation.of(thread);
+				if(allocated != -1 && allocated - startAllocated > budget.getMaxAllocatedBytes())
+				{
+					return BudgetExceededException.Limit.ALLOCATION;
+				}
+			}
+
+			return null;
+		}
+
+		private void check()
+		{
+			if(stopped != null) return;
+
+			Object reason = exceeded();
+			if(reason != null) stop(reason);
+		}
+
+		/**
+		 * Interrupts the script, unless it was already stopped or is done.
+		 */
+		private synchronized void stop(Object reason)
+		{
+			if(closed || stopped != null) return;
+			stopped = reason;
+			environment.setInterrupted(true);
+		}
+
+		/**
+		 * Stops the script before it evaluates its next function.
+		 */
+		void cancel()
+		{
+			stop(CANCELLED);
+		}
+
+		/**
+		 * Throws the reason the script was stopped, if the script ended because it was.
+		 * The watchdog may stop a script just after its last function returned, so a script that ended
+		 * any other way than by seeing the interrupt keeps its own result or exception.
+		 *
+		 * @param cause the exception the script ended with, or null
+		 * @throws BudgetExceededException if the script went over budget
+		 * @throws CancellationException if the script was cancelled
+		 */
+		void rethrow(Throwable cause)
+		{
+			if(!(cause instanceof CancelCommandException)) return;
+
+			Object reason = stopped;
+			if(reason instanceof BudgetExceededException.Limit)
+			{
+				throw new BudgetExceededException((BudgetExceededException.Limit)reason, budget, cause);
+			}
+			if(reason == CANCELLED)
+			{
+				CancellationException e = new CancellationException("Script was cancelled");
+				e.initCause(cause);
+				throw e;
+			}
+		}
+
+		/**
+		 * Stops watching the script.
+		 */
+		public synchronized void close()
+		{
+			if(closed) return;
+			closed = true;
+
+			unregister(this);
+		}
+	}
+
+	/**
+	 * Lets a script be cancelled before it has started executing, or while it is.
+	 */
+	static final class Cancellation
+	{
+		private Execution execution = null;
+		private boolean cancelled = false;
+
+		private synchronized void attach(Execution execution)
+		{
+			this.execution = execution;
+			if(cancelled) execution.cancel();
+		}
+
+		/**
+		 * Stops the script before it evaluates its next function, or as soon as it starts.
+		 * Does nothing once the script is done.
+		 */
+		synchronized void cancel()
+		{
+			cancelled = true;
+			if(execution != null) execution.cancel();
+		}
+	}
+
+	/**
+	 * Starts watching a script being executed on the current thread.
+	 * The script must be executed in the execution's environment, not in <code>environment</code> itself.
+	 * Executions without limits aren't checked by the timer, and can only be stopped through <code>cancellation</code>.
+	 *
+	 * @param environment the environment the script is executed in
+	 * @param budget the script's budget
+	 * @param cancellation what can cancel the script, or null
+	 * @return the execution, which must be closed once the script is done
+	 */
+	static Execution watch(MSEnvironment environment, ExecutionBudget budget, Cancellation cancellation)
+	{
+		Execution execution = new Execution(Thread.currentThread(), environment.view(), budget);
+		if(!budget.isUnlimited()) register(execution);
+		if(cancellation != null) cancellation.attach(execution);
+		return execution;
+	}
+
+	private static void register(Execution execution)
+	{
+		synchronized(executions)
+		{
+			executions.add(execution);
+			if(schedule == null)
+			{
+				schedule = Timer.timer.scheduleAtFixedRate(BudgetWatchdog::check, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private static void unregister(Execution execution)
+	{
+		synchronized(executions)
+		{
+			if(executions.remove(execution) && executions.isEmpty())
+			{
+				schedule.cancel(false);
+				schedule = null;
+			}
+		}
+	}
+
+	private static void check()
+	{
+		for(Execution execution: executions)
+		{
+			try
+			{
+				execution.check();
+			}
+			catch(RuntimeException e) {}
+		}
+	}
+}
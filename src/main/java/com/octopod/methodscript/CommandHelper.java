@@ -9,10 +9,14 @@ import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
 
 /**
  * @author Octopod
@@ -24,8 +28,29 @@ import java.util.Map;
  */
 public class CommandHelper
 {
+	/**
+	 * The cache used when compiling or evaluating strings.
+	 */
+	private static final ScriptCache cache = new ScriptCache();
+
+	/**
+	 * The converter used by toConstruct, which has no limits.
+	 */
+	private static final ConstructConverter converter = new ConstructConverter();
+
+	/**
+	 * Gets the cache used by compileRaw, compile and eval.
+	 *
+	 * @return the script cache
+	 */
+	public static ScriptCache getScriptCache()
+	{
+		return cache;
+	}
+
 	/**
 	 * Compiles a string into a ParseTree.
+	 * The ParseTree may be shared with other callers, so it shouldn't be modified.
 	 *
 	 * @param script
 	 * @return
@@ -34,6 +59,24 @@ public class CommandHelper
 	 */
 	public static ParseTree compileRaw(String script) throws ConfigCompileException, ConfigCompileGroupException
 	{
+		return compileRaw(script, true);
+	}
+
+	/**
+	 * Compiles a string into a ParseTree.
+	 *
+	 * @param script the script to compile
+	 * @param cached whether to use the script cache
+	 * @return the compiled script
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public static ParseTree compileRaw(String script, boolean cached) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		if(cached)
+		{
+			return cache.get(script).getParseTree();
+		}
 		return MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, Target.UNKNOWN.file(), true));
 	}
 
@@ -48,6 +91,25 @@ public class CommandHelper
 	 */
 	public static MethodScript compile(String script) throws ConfigCompileException, ConfigCompileGroupException
 	{
+		return compile(script, true);
+	}
+
+	/**
+	 * Compiles a string into a MethodScript.
+	 *
+	 * @param script the script to compile
+	 * @param cached whether to use the script cache
+	 * @return the compiled script
+	 *
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public static MethodScript compile(String script, boolean cached) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		if(cached)
+		{
+			return cache.get(script);
+		}
 		return new MethodScript(script);
 	}
 
@@ -84,175 +146,128 @@ public class CommandHelper
 	 * @throws ConfigCompileGroupException
 	 */
 	public static Construct eval(String str, MSEnvironment environment) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return eval(str, environment, true);
+	}
+
+	/**
+	 * Shorthand for compiling a string MethodScript,
+	 * using a provided MSEnvironment or creating a new one,
+	 * then executing the MethodScript using it.
+	 *
+	 * @param str the string to evaluate
+	 * @param environment the environment to use, or null
+	 * @param cached whether to use the script cache
+	 * @return Construct
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public static Construct eval(String str, MSEnvironment environment, boolean cached) throws ConfigCompileException, ConfigCompileGroupException
 	{
 		if(environment == null)
 		{
 			environment = new MSEnvironment();
 		}
 
-		MethodScript script = new MethodScript(str);
+		MethodScript script = compile(str, cached);
 
 		return script.execute(environment);
 	}
 
+	/**
+	 * Shorthand for compiling a string MethodScript (using the script cache),
+	 * then executing it, reusing an earlier result if the script is pure.
+	 *
+	 * @param str the string to evaluate
+	 * @param environment the environment to use, or null
+	 * @param results the cache of results
+	 * @return Construct
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @see MethodScript#execute(MSEnvironment, ResultCache)
+	 */
+	public static Construct eval(String str, MSEnvironment environment, ResultCache results) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		return compile(str, true).execute(environment, results);
+	}
+
 	/**
 	 * Extracts the ParseTree variable from a Procedure
 	 * @param procedure
 	 * @return
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the field
 	 */
 	public static ParseTree getProcedureTree(Procedure procedure)
 	{
-		try
-		{
-			Field field = procedure.getClass().getDeclaredField("tree");
-			field.setAccessible(true);
-			return (ParseTree)field.get(procedure);
-		}
-		catch (NoSuchFieldException | IllegalAccessException e)
-		{
-			e.printStackTrace();
-			return null;
-		}
+		return ProcedureInfo.tree(procedure);
 	}
 
 	/**
 	 * Extracts the original variables from a Procedure
 	 * @param procedure
 	 * @return
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the field
 	 */
-	@SuppressWarnings("unchecked")
-	public static Map<String, Construct> getProcedureVars(Procedure procedure) {
-		try {
-			Field field = procedure.getClass().getDeclaredField("originals");
-			field.setAccessible(true);
-			return (Map<String, Construct>)field.get(procedure);
-		} catch (NoSuchFieldException | IllegalAccessException e) {
-			e.printStackTrace();
-			return null;
-		}
-	}
-	private static <T> T newInstance(Class<T> type)
+	public static Map<String, Construct> getProcedureVars(Procedure procedure)
 	{
-		try {
-			return type.getConstructor().newInstance();
-		} catch (Exception e) {
-			return null;
-		}
+		return ProcedureInfo.originals(procedure);
 	}
 
 	/**
-	 * Converts a Java object into a Construct
+	 * Converts a Java object into a Construct.
+	 * Objects that are referenced more than once (including cyclic references) are converted only once,
+	 * and the graph is walked without recursion. Use a ConstructConverter to limit the depth or size of the graph.
 	 *
 	 * @param object the Java object
 	 * @return the CommandHelper construct
 	 */
 	public static Construct toConstruct(Object object)
 	{
-		Target t = Target.UNKNOWN;
-
-		if(object == null) return CNull.NULL;
-
-		if(object instanceof Byte) return toConstruct(((Byte) object).longValue());
-		if(object instanceof Integer) return toConstruct(((Integer) object).longValue());
-		if(object instanceof Short) return toConstruct(((Short) object).longValue());
-		if(object instanceof Long) return new CInt((long)object, t);
-
-		if(object instanceof Float) return toConstruct(((Float) object).doubleValue());
-		if(object instanceof Double) return new CDouble((double)object, t);
-
-		if(object instanceof Boolean) return CBoolean.get((boolean)object);
-
-		if(object instanceof Character) return new CString((char)object, t);
-		if(object instanceof String) return new CString((String)object, t);
-
-		if(object instanceof int[])
-		{
-			CArray array = new CArray(t);
-			for(int o: (int[])object) array.push(toConstruct(o));
-			return array;
-		}
-
-		if(object instanceof byte[])
-		{
-			CArray array = new CArray(t);
-			for(byte o: (byte[])object) array.push(toConstruct(o));
-			return array;
-		}
-
-		if(object instanceof short[])
-		{
-			CArray array = new CArray(t);
-			for(short o: (short[])object) array.push(toConstruct(o));
-			return array;
-		}
-
-		if(object instanceof long[])
-		{
-			CArray array = new CArray(t);
-			for(long o: (long[])object) array.push(toConstruct(o));
-			return array;
-		}
-
-		if(object instanceof float[])
-		{
-			CArray array = new CArray(t);
-			for(float o: (float[])object) array.push(toConstruct(o));
-			return array;
-		}
+		return converter.convert(object);
+	}
 
-		if(object instanceof double[])
-		{
-			CArray array = new CArray(t);
-			for(double o: (double[])object) array.push(toConstruct(o));
-			return array;
-		}
+	/**
+	 * Converts a sequence of Java objects into a CArray whose elements are only converted when they're accessed.
+	 * This is useful for large sequences that scripts only look at part of.
+	 * The source can be a List, Collection, Iterable, Iterator, Stream or array;
+	 * sources that can't be indexed are copied into a list first, without converting their elements.
+	 * Lists aren't copied, so they shouldn't be modified while the array is in use.
+	 *
+	 * @param source the sequence of objects
+	 * @return the lazily converted array
+	 * @throws IllegalArgumentException if the source isn't a sequence
+	 */
+	public static CArray toLazyConstruct(Object source)
+	{
+		List<?> list;
 
-		if(object instanceof boolean[])
+		if(source instanceof List && source instanceof RandomAccess)
 		{
-			CArray array = new CArray(t);
-			for(boolean o: (boolean[])object) array.push(toConstruct(o));
-			return array;
+			list = (List<?>)source;
 		}
-
-		if(object instanceof char[])
+		else if(source instanceof Collection)
 		{
-			CArray array = new CArray(t);
-			for(char o: (char[])object) array.push(toConstruct(o));
-			return array;
+			list = new ArrayList<>((Collection<?>)source);
 		}
-
-		if(object instanceof Object[])
+		else if(source instanceof Object[])
 		{
-			CArray array = new CArray(t);
-			for(Object o: (Object[])object) array.push(toConstruct(o));
-			return array;
+			list = Arrays.asList((Object[])source);
 		}
-
-		if(object instanceof Collection)
+		else if(source instanceof Iterable || source instanceof Iterator || source instanceof Stream)
 		{
-			return toConstruct(((Collection) object).toArray());
+			Iterator<?> iterator = source instanceof Iterable ? ((Iterable<?>)source).iterator()
+					: source instanceof Iterator ? (Iterator<?>)source
+					: ((Stream<?>)source).iterator();
+			ArrayList<Object> buffer = new ArrayList<>();
+			iterator.forEachRemaining(buffer::add);
+			list = buffer;
 		}
-
-		if(object instanceof Map)
+		else
 		{
-			Map map = (Map)object;
-			CArray array = new CArray(t);
-			for(Object key: map.keySet()) array.set(key.toString(), toConstruct(map.get(key)), t);
-			return array;
+			throw new IllegalArgumentException("Not a sequence: " + (source == null ? null : source.getClass().getName()));
 		}
 
-		CArray array = new CArray(t);
-
-		for(Field field: object.getClass().getDeclaredFields())
-		{
-			boolean wasUnlocked = field.isAccessible();
-			field.setAccessible(true);
-			try {
-				array.set(field.getName(), toConstruct(field.get(object)), t);
-			} catch (IllegalAccessException e) {}
-			field.setAccessible(wasUnlocked);
-		}
-		return array;
+		return new LazyCArray(list, Target.UNKNOWN);
 	}
 
 	/**
@@ -303,24 +318,28 @@ public class CommandHelper
 		{
 			//Deserialize class fields???
 			CArray array = (CArray)construct;
+
+			if(type == long[].class) return (T)toLongArray(array);
+			if(type == int[].class) return (T)toIntArray(array);
+			if(type == double[].class) return (T)toDoubleArray(array);
+
+			ConstructMarshaller<T> marshaller = Marshallers.get(type);
+			if(marshaller != null) return marshaller.fromConstruct(array);
+
 			Target t = Target.UNKNOWN;
-			T obj = newInstance(type);
+			ConstructBinding binding = ConstructBinding.of(type);
+			Object obj = binding.newInstance();
 			if(obj == null) {return null;}
 
 			for(Construct key: array.keySet())
 			{
-				Field field;
-				boolean wasUnlocked;
-				try {
-					field = type.getDeclaredField(key.val());
-					wasUnlocked = field.isAccessible();
-
-					field.setAccessible(true);
-					field.set(obj, fromConstruct(array.get(key, t), field.getType()));
-					field.setAccessible(wasUnlocked);
-				} catch (NoSuchFieldException | IllegalAccessException e) {}
+				ConstructBinding.Property property = binding.get(key.val());
+				if(property != null)
+				{
+					property.set(obj, fromConstruct(array.get(key, t), property.type));
+				}
 			}
-			return obj;
+			return (T)obj;
 		}
 
 		return nonNullObject(type);
@@ -328,6 +347,77 @@ public class CommandHelper
 
 	}
 
+	/**
+	 * Gets an element of a numeric CArray, failing with the element's index if it isn't a number.
+	 */
+	private static Construct number(CArray array, int index, String type)
+	{
+		Construct c = array.get(index, Target.UNKNOWN);
+		if(!(c instanceof CInt) && !(c instanceof CDouble))
+		{
+			throw new IllegalArgumentException("Can't convert element " + index + " (" + c.getClass().getSimpleName()
+					+ " " + c.val() + ") to " + type);
+		}
+		return c;
+	}
+
+	/**
+	 * Extracts a CArray of numbers into a long array.
+	 * Doubles are truncated.
+	 *
+	 * @param array the array
+	 * @return the values of the array
+	 * @throws IllegalArgumentException if an element isn't a number
+	 */
+	private static long[] toLongArray(CArray array)
+	{
+		long[] values = new long[(int)array.size()];
+		for(int i = 0; i < values.length; i++)
+		{
+			Construct c = number(array, i, "long");
+			values[i] = c instanceof CInt ? ((CInt)c).getInt() : (long)((CDouble)c).getDouble();
+		}
+		return values;
+	}
+
+	/**
+	 * Extracts a CArray of numbers into an int array.
+	 * Integers are narrowed and doubles are truncated.
+	 *
+	 * @param array the array
+	 * @return the values of the array
+	 * @throws IllegalArgumentException if an element isn't a number
+	 */
+	private static int[] toIntArray(CArray array)
+	{
+		int[] values = new int[(int)array.size()];
+		for(int i = 0; i < values.length; i++)
+		{
+			Construct c = number(array, i, "int");
+			values[i] = c instanceof CInt ? (int)((CInt)c).getInt() : (int)((CDouble)c).getDouble();
+		}
+		return values;
+	}
+
+	/**
+	 * Extracts a CArray of numbers into a double array.
+	 * Integers are widened.
+	 *
+	 * @param array the array
+	 * @return the values of the array
+	 * @throws IllegalArgumentException if an element isn't a number
+	 */
+	private static double[] toDoubleArray(CArray array)
+	{
+		double[] values = new double[(int)array.size()];
+		for(int i = 0; i < values.length; i++)
+		{
+			Construct c = number(array, i, "double");
+			values[i] = c instanceof CDouble ? ((CDouble)c).getDouble() : ((CInt)c).getInt();
+		}
+		return values;
+	}
+
 	@SuppressWarnings("unchecked")
 	public static <T> T nonNullObject(Class<T> type)
 	{
@@ -0,0 +1,98 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A variable list that can be read and written by several threads at once, backed by a ConcurrentHashMap.
+ * Reads of set variables don't lock.
+ */
+class ConcurrentVariableList extends IVariableList
+{
+	private final ConcurrentHashMap<String, IVariable> variables;
+
+	ConcurrentVariableList()
+	{
+		this.variables = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Creates a concurrent list with a copy of another list's variables.
+	 *
+	 * @param list the list to copy
+	 */
+	ConcurrentVariableList(IVariableList list)
+	{
+		this.variables = new ConcurrentHashMap<>();
+		Target t = Target.UNKNOWN;
+		for(String name: list.keySet()) variables.put(name, list.get(name, t));
+	}
+
+	private ConcurrentVariableList(Map<String, IVariable> variables)
+	{
+		this.variables = new ConcurrentHashMap<>(variables);
+	}
+
+	/**
+	 * Gets a read-only view of the variables.
+	 *
+	 * @return a map of variable names and variables
+	 */
+	Map<String, IVariable> toMap()
+	{
+		return Collections.unmodifiableMap(variables);
+	}
+
+	IVariable find(String name)
+	{
+		return variables.get(name);
+	}
+
+	public void set(IVariable v)
+	{
+		variables.put(v.getVariableName(), v);
+	}
+
+	public void remove(String name)
+	{
+		variables.remove(name);
+	}
+
+	public IVariable get(String name, Target t)
+	{
+		IVariable v = variables.get(name);
+		if(v != null) return v;
+
+		//let IVariableList decide what an unset variable is, without racing on its own map
+		synchronized(this)
+		{
+			return super.get(name, t);
+		}
+	}
+
+	public boolean has(String name)
+	{
+		return variables.containsKey(name);
+	}
+
+	public Set<String> keySet()
+	{
+		return Collections.unmodifiableSet(variables.keySet());
+	}
+
+	public ConcurrentVariableList clone()
+	{
+		return new ConcurrentVariableList(variables);
+	}
+
+	public String toString()
+	{
+		return variables.toString();
+	}
+}
@@ -0,0 +1,211 @@
+package com.octopod.methodscript;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields and constructor of a class, as used by <code>CommandHelper.toConstruct()</code>
+ * and <code>CommandHelper.fromConstruct()</code>.
+ * The reflection lookups are done once per class and the resulting handles are cached.
+ */
+final class ConstructBinding
+{
+	private static final ClassValue<ConstructBinding> bindings = new ClassValue<ConstructBinding>()
+	{
+		protected ConstructBinding computeValue(Class<?> type)
+		{
+			return new ConstructBinding(type);
+		}
+	};
+
+	/**
+	 * Gets the binding of a class.
+	 *
+	 * @param type the class
+	 * @return the binding
+	 */
+	static ConstructBinding of(Class<?> type)
+	{
+		return bindings.get(type);
+	}
+
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class);
+
+	/**
+	 * A field of a class.
+	 */
+	static final class Property
+	{
+		final String name;
+		final Class<?> type;
+
+		/**
+		 * Takes the object and returns the field's value.
+		 */
+		private final MethodHandle getter;
+
+		/**
+		 * Takes the object and the new value, or is null if the field can't be set.
+		 */
+		private final MethodHandle setter;
+
+		Property(String name, Class<?> type, MethodHandle getter, MethodHandle setter)
+		{
+			this.name = name;
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		Object get(Object object)
+		{
+			try
+			{
+				return (Object)getter.invokeExact(object);
+			}
+			catch(RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch(Throwable e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Sets the field's value. Does nothing if the field can't be set,
+		 * or if the value is null and the field is primitive.
+		 */
+		void set(Object object, Object value)
+		{
+			if(setter == null || (value == null && type.isPrimitive())) return;
+			try
+			{
+				setter.invokeExact(object, value);
+			}
+			catch(RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch(Throwable e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Every declared field of the class, in declaration order.
+	 */
+	final List<Property> properties;
+
+	private final Map<String, Property> byName;
+
+	/**
+	 * The public no-args constructor of the class, or null.
+	 */
+	private final MethodHandle constructor;
+
+	private ConstructBinding(Class<?> type)
+	{
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		List<Property> properties = new ArrayList<>();
+		Map<String, Property> byName = new HashMap<>();
+
+		for(Field field: type.getDeclaredFields())
+		{
+			MethodHandle getter, setter;
+			try
+			{
+				field.setAccessible(true);
+				getter = lookup.unreflectGetter(field);
+			}
+			catch(IllegalAccessException | RuntimeException e)
+			{
+				//Inaccessible fields (such as fields of closed modules) are skipped
+				continue;
+			}
+
+			try
+			{
+				setter = lookup.unreflectSetter(field);
+			}
+			catch(IllegalAccessException e)
+			{
+				//Static final fields can't be set
+				setter = null;
+			}
+
+			if(Modifier.isStatic(field.getModifiers()))
+			{
+				getter = MethodHandles.dropArguments(getter, 0, Object.class);
+				if(setter != null) setter = MethodHandles.dropArguments(setter, 0, Object.class);
+			}
+
+			Property property = new Property(
+					field.getName(),
+					field.getType(),
+					getter.asType(GETTER),
+					setter == null ? null : setter.asType(SETTER)
+			);
+
+			properties.add(property);
+			byName.put(property.name, property);
+		}
+
+		MethodHandle constructor;
+		try
+		{
+			constructor = lookup.unreflectConstructor(type.getConstructor()).asType(CONSTRUCTOR);
+		}
+		catch(NoSuchMethodException | IllegalAccessException | RuntimeException e)
+		{
+			constructor = null;
+		}
+
+		this.properties = Collections.unmodifiableList(properties);
+		this.byName = byName;
+		this.constructor = constructor;
+	}
+
+	/**
+	 * Gets a field by name.
+	 *
+	 * @param name the name of the field
+	 * @return the field, or null if there is no such field
+	 */
+	Property get(String name)
+	{
+		return byName.get(name);
+	}
+
+	/**
+	 * Creates a new instance of the class using its public no-args constructor.
+	 *
+	 * @return the new instance, or null if it couldn't be created
+	 */
+	Object newInstance()
+	{
+		if(constructor == null) return null;
+		try
+		{
+			return (Object)constructor.invokeExact();
+		}
+		catch(Throwable e)
+		{
+			return null;
+		}
+	}
+}
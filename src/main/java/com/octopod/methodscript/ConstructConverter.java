@@ -0,0 +1,308 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.*;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Converts Java object graphs into Constructs.
+ * Arrays, collections, maps and plain objects are walked iteratively rather than recursively,
+ * and each one is converted only once: an object referenced from several places (or from itself)
+ * becomes a single CArray that is shared by every reference.
+ * The depth of the graph and the number of converted values can be limited.
+ * A converter holds no state between conversions, so it can be shared between threads.
+ */
+public class ConstructConverter
+{
+	private int maxDepth = Integer.MAX_VALUE;
+	private long maxSize = Long.MAX_VALUE;
+
+	/**
+	 * Sets how deeply nested the converted graph can be. The root object is at depth 0.
+	 *
+	 * @param maxDepth the maximum depth
+	 * @return this converter
+	 */
+	public ConstructConverter setMaxDepth(int maxDepth)
+	{
+		if(maxDepth < 0)
+			throw new IllegalArgumentException("maxDepth can't be negative");
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Sets how many values (array elements, map entries and fields) can be converted in total.
+	 *
+	 * @param maxSize the maximum number of values
+	 * @return this converter
+	 */
+	public ConstructConverter setMaxSize(long maxSize)
+	{
+		if(maxSize < 0)
+			throw new IllegalArgumentException("maxSize can't be negative");
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Converts a Java object into a Construct.
+	 *
+	 * @param object the Java object
+	 * @return the CommandHelper construct
+	 * @throws IllegalArgumentException if the object graph is deeper or larger than this converter allows
+	 */
+	public Construct convert(Object object)
+	{
+		Construct leaf = leaf(object);
+		if(leaf != null) return leaf;
+
+		return new Conversion().run(object);
+	}
+
+	/**
+	 * A container whose contents haven't been converted yet.
+	 */
+	private static class Task
+	{
+		final Object object;
+		final CArray array;
+		final int depth;
+
+		Task(Object object, CArray array, int depth)
+		{
+			this.object = object;
+			this.array = array;
+			this.depth = depth;
+		}
+	}
+
+	/**
+	 * The state of a single conversion.
+	 */
+	private class Conversion
+	{
+		final Target t = Target.UNKNOWN;
+		final Map<Object, CArray> converted = new IdentityHashMap<>();
+		final ArrayDeque<Task> tasks = new ArrayDeque<>();
+		long size = 0;
+
+		Construct run(Object root)
+		{
+			CArray array = container(root, 0);
+			while(!tasks.isEmpty())
+			{
+				fill(tasks.pop());
+			}
+			return array;
+		}
+
+		/**
+		 * Converts a value inside a container at <code>depth</code>.
+		 */
+		Construct child(Object object, int depth)
+		{
+			if(++size > maxSize)
+			{
+				throw new IllegalArgumentException("Object graph has more than " + maxSize + " values");
+			}
+
+			Construct leaf = leaf(object);
+			if(leaf != null) return leaf;
+
+			return container(object, depth + 1);
+		}
+
+		/**
+		 * Gets the CArray of a container, creating it and scheduling its contents to be converted if it's new.
+		 */
+		CArray container(Object object, int depth)
+		{
+			CArray array = converted.get(object);
+			if(array != null) return array;
+
+			if(depth > maxDepth)
+			{
+				throw new IllegalArgumentException("Object graph is deeper than " + maxDepth);
+			}
+
+			int size = sizeOf(object);
+			array = size > 0 ? new CArray(t, size) : new CArray(t);
+			converted.put(object, array);
+			tasks.push(new Task(object, array, depth));
+			return array;
+		}
+
+		/**
+		 * Gets how many values a container holds, if that's known before iterating it, so its CArray can be sized up front.
+		 *
+		 * @return the number of values, or -1 if it isn't known
+		 */
+		int sizeOf(Object object)
+		{
+			if(object instanceof Object[]) return Array.getLength(object);
+			if(object instanceof Collection) return ((Collection<?>)object).size();
+			if(object instanceof Map) return ((Map<?, ?>)object).size();
+			return -1;
+		}
+
+		@SuppressWarnings("unchecked")
+		void fill(Task task)
+		{
+			Object object = task.object;
+			CArray array = task.array;
+			int depth = task.depth;
+
+			if(object instanceof Object[])
+			{
+				for(Object o: (Object[])object) array.push(child(o, depth));
+				return;
+			}
+
+			if(object instanceof Map)
+			{
+				for(Map.Entry<Object, Object> entry: ((Map<Object, Object>)object).entrySet())
+				{
+					array.set(String.valueOf(entry.getKey()), child(entry.getValue(), depth), t);
+				}
+				return;
+			}
+
+			Iterator<?> iterator = null;
+			if(object instanceof Iterable) iterator = ((Iterable<?>)object).iterator();
+			if(object instanceof Iterator) iterator = (Iterator<?>)object;
+			if(object instanceof Stream) iterator = ((Stream<?>)object).iterator();
+
+			if(iterator != null)
+			{
+				while(iterator.hasNext()) array.push(child(iterator.next(), depth));
+				return;
+			}
+
+			for(ConstructBinding.Property property: ConstructBinding.of(object.getClass()).properties)
+			{
+				array.set(property.name, child(property.get(object), depth), t);
+			}
+		}
+	}
+
+	/**
+	 * Converts objects that don't hold other objects: null, boxed primitives, strings,
+	 * primitive arrays and primitive streams, and objects with a generated marshaller.
+	 *
+	 * @param object the object
+	 * @return the construct, or null if the object is a container
+	 */
+	@SuppressWarnings("unchecked")
+	private static Construct leaf(Object object)
+	{
+		Target t = Target.UNKNOWN;
+
+		if(object == null) return CNull.NULL;
+
+		ConstructMarshaller<Object> marshaller = Marshallers.get((Class<Object>)object.getClass());
+		if(marshaller != null) return marshaller.toConstruct(object);
+
+		if(object instanceof Byte) return new CInt((Byte)object, t);
+		if(object instanceof Integer) return new CInt((Integer)object, t);
+		if(object instanceof Short) return new CInt((Short)object, t);
+		if(object instanceof Long) return new CInt((Long)object, t);
+
+		if(object instanceof Float) return new CDouble((Float)object, t);
+		if(object instanceof Double) return new CDouble((Double)object, t);
+
+		if(object instanceof Boolean) return CBoolean.get((Boolean)object);
+
+		if(object instanceof Character) return new CString((Character)object, t);
+		if(object instanceof String) return new CString((String)object, t);
+
+		if(object instanceof int[])
+		{
+			int[] values = (int[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CInt(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof byte[])
+		{
+			byte[] values = (byte[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CInt(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof short[])
+		{
+			short[] values = (short[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CInt(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof long[])
+		{
+			long[] values = (long[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CInt(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof float[])
+		{
+			float[] values = (float[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CDouble(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof double[])
+		{
+			double[] values = (double[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CDouble(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof boolean[])
+		{
+			boolean[] values = (boolean[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = CBoolean.get(values[i]);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof char[])
+		{
+			char[] values = (char[])object;
+			Construct[] items = new Construct[values.length];
+			for(int i = 0; i < values.length; i++) items[i] = new CString(values[i], t);
+			return new CArray(t, items);
+		}
+
+		if(object instanceof IntStream) return leaf(((IntStream)object).toArray());
+		if(object instanceof LongStream) return leaf(((LongStream)object).toArray());
+		if(object instanceof DoubleStream) return leaf(((DoubleStream)object).toArray());
+
+		return null;
+	}
+}
@@ -0,0 +1,28 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+
+/**
+ * Converts a Java type to and from an associative CArray.
+ * Implementations are usually generated for classes annotated with <code>@Marshalled</code>.
+ *
+ * @param <T> the Java type
+ */
+public interface ConstructMarshaller<T>
+{
+	/**
+	 * Converts an object into a CArray, using the names of its fields as keys.
+	 *
+	 * @param object the object, not null
+	 * @return the array
+	 */
+	CArray toConstruct(T object);
+
+	/**
+	 * Creates an object from a CArray, setting every field that has a matching key.
+	 *
+	 * @param array the array
+	 * @return the object, or null if it couldn't be created
+	 */
+	T fromConstruct(CArray array);
+}
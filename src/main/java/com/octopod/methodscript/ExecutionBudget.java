@@ -0,0 +1,88 @@
+package com.octopod.methodscript;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on a single execution of a MethodScript: how long it may run for, how much CPU time it may use,
+ * and how much memory it may allocate. A limit of 0 means no limit.
+ * Budgets are enforced cooperatively: once a limit is passed, the script is interrupted
+ * before it evaluates its next function, and <code>MethodScript.execute()</code> throws a BudgetExceededException.
+ * A script blocked inside a single function (such as a slow query) is only stopped once that function returns.
+ * Budgets are immutable.
+ */
+public final class ExecutionBudget
+{
+	/**
+	 * No limits. Executions with this budget can still be cancelled through their future.
+	 */
+	public static final ExecutionBudget UNLIMITED = new ExecutionBudget(0, 0, TimeUnit.NANOSECONDS, 0);
+
+	private final long wallTimeNanos;
+	private final long cpuTimeNanos;
+	private final long maxAllocatedBytes;
+
+	/**
+	 * Creates a budget.
+	 *
+	 * @param wallTime how long the script may run for, or 0 for no limit
+	 * @param cpuTime how much CPU time the script may use, or 0 for no limit
+	 * @param unit the unit of <code>wallTime</code> and <code>cpuTime</code>
+	 * @param maxAllocatedBytes how many bytes the script may allocate, or 0 for no limit
+	 */
+	public ExecutionBudget(long wallTime, long cpuTime, TimeUnit unit, long maxAllocatedBytes)
+	{
+		if(wallTime < 0 || cpuTime < 0 || maxAllocatedBytes < 0)
+			throw new IllegalArgumentException("Limits can't be negative");
+
+		this.wallTimeNanos = unit.toNanos(wallTime);
+		this.cpuTimeNanos = unit.toNanos(cpuTime);
+		this.maxAllocatedBytes = maxAllocatedBytes;
+	}
+
+	/**
+	 * Creates a budget that only limits how long a script may run for.
+	 *
+	 * @param wallTime how long the script may run for
+	 * @param unit the unit of <code>wallTime</code>
+	 * @return the budget
+	 */
+	public static ExecutionBudget ofWallTime(long wallTime, TimeUnit unit)
+	{
+		return new ExecutionBudget(wallTime, 0, unit, 0);
+	}
+
+	public long getWallTimeNanos()
+	{
+		return wallTimeNanos;
+	}
+
+	/**
+	 * Gets the CPU time limit. It is ignored on JVMs that can't measure the CPU time of a thread.
+	 *
+	 * @return the limit, in nanoseconds
+	 */
+	public long getCpuTimeNanos()
+	{
+		return cpuTimeNanos;
+	}
+
+	/**
+	 * Gets the allocation limit. It is ignored on JVMs that can't measure what a thread allocates.
+	 *
+	 * @return the limit, in bytes
+	 */
+	public long getMaxAllocatedBytes()
+	{
+		return maxAllocatedBytes;
+	}
+
+	public boolean isUnlimited()
+	{
+		return wallTimeNanos == 0 && cpuTimeNanos == 0 && maxAllocatedBytes == 0;
+	}
+
+	public String toString()
+	{
+		return "ExecutionBudget{wallTime=" + wallTimeNanos + "ns, cpuTime=" + cpuTimeNanos + "ns, allocated=" + maxAllocatedBytes + "b}";
+	}
+}
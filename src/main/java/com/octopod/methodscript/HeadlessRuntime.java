@@ -0,0 +1,145 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.PureUtilities.ClassLoading.ClassDiscovery;
+import com.laytonsmith.commandhelper.CommandHelperFileLocations;
+import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.Implementation;
+import com.laytonsmith.core.MethodScriptExecutionQueue;
+import com.laytonsmith.core.Profiles;
+import com.laytonsmith.core.environments.CommandHelperEnvironment;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.environments.GlobalEnv;
+import com.laytonsmith.core.extensions.ExtensionManager;
+import com.laytonsmith.core.profiler.Profiler;
+import com.laytonsmith.core.taskmanager.TaskManager;
+import com.laytonsmith.persistence.DataSourceException;
+import com.laytonsmith.persistence.PersistenceNetwork;
+import com.laytonsmith.persistence.io.ConnectionMixinFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Runs MethodScript without a Bukkit server (or CommandHelper's plugin) being loaded,
+ * for example in batch jobs, tests and benchmarks.
+ * Installing the runtime loads CommandHelper's functions and builds the environment
+ * every MSEnvironment is copied from, using a local execution queue, profiler and
+ * persistence network kept in a directory.
+ * Functions that need a server, such as player or world functions, won't work.
+ */
+public final class HeadlessRuntime
+{
+	private static File directory = null;
+	private static MethodScriptExecutionQueue executionQueue = null;
+
+	private HeadlessRuntime() {}
+
+	/**
+	 * Installs the runtime in a temporary directory, which is deleted when the JVM exits.
+	 * Does nothing if it's already installed.
+	 *
+	 * @throws IllegalStateException if the runtime couldn't be installed
+	 */
+	public static synchronized void install()
+	{
+		if(directory != null) return;
+
+		try
+		{
+			File temp = Files.createTempDirectory("methodscript").toFile();
+			temp.deleteOnExit();
+			install(temp);
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException("Unable to create a directory for the headless runtime", e);
+		}
+	}
+
+	/**
+	 * Installs the runtime, keeping CommandHelper's configuration, profiles and persisted values in a directory.
+	 * Does nothing if it's already installed.
+	 *
+	 * @param directory the directory, which is created if it doesn't exist
+	 * @throws IllegalStateException if the runtime couldn't be installed
+	 */
+	public static synchronized void install(File directory)
+	{
+		if(HeadlessRuntime.directory != null) return;
+
+		try
+		{
+			Files.createDirectories(directory.toPath());
+
+			try
+			{
+				Implementation.setServerType(Implementation.Type.SHELL);
+			}
+			catch(RuntimeException e) {} //the server type was already set
+
+			CommandHelperFileLocations locations = new CommandHelperFileLocations(directory);
+			CommandHelperFileLocations.setDefault(locations);
+
+			ClassDiscovery discovery = ClassDiscovery.getDefaultInstance();
+			discovery.addDiscoveryLocation(ClassDiscovery.GetClassContainer(CommandHelperPlugin.class));
+			ExtensionManager.Initialize(discovery);
+
+			File profiles = locations.getProfilesFile();
+			if(!profiles.exists())
+			{
+				Files.write(profiles.toPath(), "<profiles></profiles>".getBytes(StandardCharsets.UTF_8));
+			}
+
+			ConnectionMixinFactory.ConnectionMixinOptions options = new ConnectionMixinFactory.ConnectionMixinOptions();
+			options.setWorkingDirectory(directory);
+
+			MethodScriptExecutionQueue queue = new MethodScriptExecutionQueue("MethodScriptHeadless", "default");
+
+			GlobalEnv gEnv = new GlobalEnv(
+					queue,
+					new Profiler(new File(directory, "profiler.config")),
+					new PersistenceNetwork(new File(directory, "persistence.config"), new File(directory, "persistence.ser").toURI(), options),
+					directory,
+					new Profiles(profiles),
+					new TaskManager()
+			);
+			gEnv.SetDynamicScriptingMode(true);
+
+			MSEnvironment.setDefaultEnvironment(Environment.createEnvironment(gEnv, new CommandHelperEnvironment()));
+
+			HeadlessRuntime.directory = directory;
+			HeadlessRuntime.executionQueue = queue;
+		}
+		catch(IOException | URISyntaxException | DataSourceException | Profiles.InvalidProfileException e)
+		{
+			throw new IllegalStateException("Unable to install the headless runtime", e);
+		}
+	}
+
+	public static synchronized boolean isInstalled()
+	{
+		return directory != null;
+	}
+
+	/**
+	 * Gets the directory the runtime was installed in.
+	 *
+	 * @return the directory, or null if the runtime isn't installed
+	 */
+	public static synchronized File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Stops everything still queued by scripts (for example with <code>queue_push()</code>).
+	 * The runtime stays installed.
+	 */
+	public static synchronized void stop()
+	{
+		if(executionQueue != null) executionQueue.stopAllNow();
+	}
+}
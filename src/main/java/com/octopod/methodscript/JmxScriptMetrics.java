@@ -0,0 +1,102 @@
+package com.octopod.methodscript;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps ScriptStats for every script source and registers each one as an MXBean,
+ * named <code>com.octopod.methodscript:type=Script,name="source"</code>.
+ */
+public class JmxScriptMetrics implements ScriptMetrics
+{
+	private static final Logger logger = Logger.getLogger(JmxScriptMetrics.class.getName());
+
+	public static final String DOMAIN = "com.octopod.methodscript";
+
+	private final MBeanServer server;
+
+	private final Map<String, ScriptStats> stats = new ConcurrentHashMap<>();
+
+	public JmxScriptMetrics()
+	{
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public JmxScriptMetrics(MBeanServer server)
+	{
+		this.server = server;
+	}
+
+	/**
+	 * Gets the statistics of a script, creating and registering them if needed.
+	 *
+	 * @param source the source of the script
+	 * @return the statistics
+	 */
+	public ScriptStats getStats(String source)
+	{
+		ScriptStats s = stats.get(source);
+		if(s != null) return s;
+
+		return stats.computeIfAbsent(source, (key) -> {
+			ScriptStats created = new ScriptStats(key);
+			try
+			{
+				server.registerMBean(created, objectName(key));
+			}
+			catch(JMException e)
+			{
+				logger.log(Level.WARNING, "Unable to register the statistics of " + key, e);
+			}
+			return created;
+		});
+	}
+
+	/**
+	 * Gets the statistics of every script seen so far.
+	 *
+	 * @return a map of sources and statistics
+	 */
+	public Map<String, ScriptStats> getAllStats()
+	{
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Unregisters every MXBean this instance has registered.
+	 */
+	public void unregister()
+	{
+		for(String source: stats.keySet())
+		{
+			try
+			{
+				server.unregisterMBean(objectName(source));
+			}
+			catch(JMException e) {}
+		}
+		stats.clear();
+	}
+
+	private static ObjectName objectName(String source) throws JMException
+	{
+		return new ObjectName(DOMAIN + ":type=Script,name=" + ObjectName.quote(source));
+	}
+
+	public void compiled(String source, long nanos)
+	{
+		getStats(source).compiled(nanos);
+	}
+
+	public void executed(String source, long nanos, long allocatedBytes, Throwable error)
+	{
+		getStats(source).executed(nanos, allocatedBytes, error);
+	}
+}
@@ -0,0 +1,113 @@
+package com.octopod.methodscript;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of positive values, such as latencies in nanoseconds.
+ * Like HdrHistogram, each power of two is split into 32 linear buckets,
+ * so any value can be recorded in constant time and percentiles are accurate to about 3%.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+
+	/**
+	 * Enough buckets for every positive long.
+	 */
+	private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	private static int index(long value)
+	{
+		if(value < SUB) return (int)value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB + (int)((value >>> shift) - SUB);
+	}
+
+	/**
+	 * Gets the highest value that falls into a bucket.
+	 */
+	private static long highest(int index)
+	{
+		if(index < SUB) return index;
+		int shift = index / SUB - 1;
+		long lowest = (long)(index % SUB + SUB) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param value the value
+	 */
+	public void record(long value)
+	{
+		if(value < 0) value = 0;
+
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long m;
+		while(value > (m = max.get()) && !max.compareAndSet(m, value));
+	}
+
+	/**
+	 * Gets the value below which a percentage of the recorded values fall.
+	 *
+	 * @param percentile the percentage, from 0 to 100
+	 * @return the value at the percentile, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long n = count.get();
+		if(n == 0) return 0;
+
+		long target = Math.max(1, (long)Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if(seen >= target) return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getTotal()
+	{
+		return total.get();
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	public double getMean()
+	{
+		long n = count.get();
+		return n == 0 ? 0 : (double)total.get() / n;
+	}
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,238 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Procedure;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A procedure map that reads through to parent maps it never modifies, and keeps only its own writes.
+ * Later parents take precedence over earlier ones, and the writes take precedence over every parent.
+ * Removing a procedure that lives in a parent leaves a tombstone (a null) in the writes.
+ * Parents are shared, not copied, so they should not be modified while the map is in use; this map is not thread-safe.
+ */
+class LayeredProcedureMap extends AbstractMap<String, Procedure>
+{
+	private final List<Map<String, Procedure>> parents;
+
+	/**
+	 * The tag each parent was attached under, or null, in the same order as <code>parents</code>.
+	 */
+	private final List<Object> tags;
+
+	private final Map<String, Procedure> local;
+
+	LayeredProcedureMap()
+	{
+		this.parents = new ArrayList<>(1);
+		this.tags = new ArrayList<>(1);
+		this.local = new HashMap<>();
+	}
+
+	LayeredProcedureMap(Map<String, Procedure> parent)
+	{
+		this();
+		attach(parent);
+	}
+
+	private LayeredProcedureMap(List<Map<String, Procedure>> parents, List<Object> tags, Map<String, Procedure> local)
+	{
+		this.parents = new ArrayList<>(parents);
+		this.tags = new ArrayList<>(tags);
+		this.local = new HashMap<>(local);
+	}
+
+	/**
+	 * Creates a layered copy of a procedure map.
+	 * If the map is layered, only its writes are copied and its parents are shared.
+	 *
+	 * @param map the map to copy
+	 * @return the copy
+	 */
+	static LayeredProcedureMap copyOf(Map<String, Procedure> map)
+	{
+		if(map instanceof LayeredProcedureMap)
+		{
+			LayeredProcedureMap layered = (LayeredProcedureMap)map;
+			return new LayeredProcedureMap(layered.parents, layered.tags, layered.local);
+		}
+		return new LayeredProcedureMap(Collections.emptyList(), Collections.emptyList(), map);
+	}
+
+	/**
+	 * Adds a parent on top of the existing parents, without copying it.
+	 * Procedures this map has set itself still take precedence, but those it has removed are visible again
+	 * if the new parent has them. This takes time proportional to this map's own writes, not to the parent.
+	 *
+	 * @param parent the parent
+	 */
+	void attach(Map<String, Procedure> parent)
+	{
+		attach(null, parent);
+	}
+
+	/**
+	 * Adds a parent on top of the existing parents under a tag, replacing the parent last attached under the same tag.
+	 * Does nothing if that parent is already attached under the tag, so a parent that changes now and then
+	 * (such as the auto includes) can be attached before every use.
+	 *
+	 * @param tag the tag, compared by identity, or null to not replace any parent
+	 * @param parent the parent
+	 * @see #attach(Map)
+	 */
+	void attach(Object tag, Map<String, Procedure> parent)
+	{
+		if(tag != null)
+		{
+			for(int i = 0; i < tags.size(); i++)
+			{
+				if(tags.get(i) != tag) continue;
+				if(parents.get(i) == parent) return;
+				parents.remove(i);
+				tags.remove(i);
+				break;
+			}
+		}
+
+		Iterator<Entry<String, Procedure>> iterator = local.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Entry<String, Procedure> entry = iterator.next();
+			if(entry.getValue() == null && parent.containsKey(entry.getKey())) iterator.remove();
+		}
+		parents.add(parent);
+		tags.add(tag);
+	}
+
+	/**
+	 * Replaces every procedure with those of the given parents, without copying them.
+	 * This map's own writes are discarded, so this takes constant time however many procedures there are.
+	 *
+	 * @param parents the new parents, later ones taking precedence
+	 */
+	void restore(List<Map<String, Procedure>> parents)
+	{
+		this.parents.clear();
+		this.parents.addAll(parents);
+		tags.clear();
+		for(int i = 0; i < parents.size(); i++) tags.add(null);
+		local.clear();
+	}
+
+	public Procedure get(Object key)
+	{
+		if(local.containsKey(key)) return local.get(key);
+
+		for(int i = parents.size() - 1; i >= 0; i--)
+		{
+			Procedure procedure = parents.get(i).get(key);
+			if(procedure != null) return procedure;
+		}
+		return null;
+	}
+
+	public boolean containsKey(Object key)
+	{
+		return get(key) != null;
+	}
+
+	private boolean inParents(Object key)
+	{
+		for(Map<String, Procedure> parent: parents)
+		{
+			if(parent.containsKey(key)) return true;
+		}
+		return false;
+	}
+
+	public Procedure put(String key, Procedure value)
+	{
+		if(value == null)
+			throw new NullPointerException("Procedures can't be null");
+		Procedure old = get(key);
+		local.put(key, value);
+		return old;
+	}
+
+	public Procedure remove(Object key)
+	{
+		Procedure old = get(key);
+		if(inParents(key))
+		{
+			local.put((String)key, null);
+		}
+		else
+		{
+			local.remove(key);
+		}
+		return old;
+	}
+
+	public void clear()
+	{
+		local.clear();
+		for(Map<String, Procedure> parent: parents)
+		{
+			for(String key: parent.keySet()) local.put(key, null);
+		}
+	}
+
+	/**
+	 * Collects every live procedure of the parents and the writes.
+	 */
+	private Map<String, Procedure> flatten()
+	{
+		Map<String, Procedure> map = new HashMap<>();
+		for(Map<String, Procedure> parent: parents) map.putAll(parent);
+		for(Map.Entry<String, Procedure> entry: local.entrySet())
+		{
+			if(entry.getValue() == null) map.remove(entry.getKey());
+			else map.put(entry.getKey(), entry.getValue());
+		}
+		return map;
+	}
+
+	public Set<Entry<String, Procedure>> entrySet()
+	{
+		return new AbstractSet<Entry<String, Procedure>>()
+		{
+			public Iterator<Entry<String, Procedure>> iterator()
+			{
+				final Iterator<Entry<String, Procedure>> iterator = flatten().entrySet().iterator();
+				return new Iterator<Entry<String, Procedure>>()
+				{
+					private Entry<String, Procedure> last;
+
+					public boolean hasNext()
+					{
+						return iterator.hasNext();
+					}
+
+					public Entry<String, Procedure> next()
+					{
+						return last = iterator.next();
+					}
+
+					public void remove()
+					{
+						if(last == null) throw new IllegalStateException();
+						LayeredProcedureMap.this.remove(last.getKey());
+						last = null;
+					}
+				};
+			}
+
+			public int size()
+			{
+				return flatten().size();
+			}
+		};
+	}
+}
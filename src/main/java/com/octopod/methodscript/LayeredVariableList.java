@@ -0,0 +1,208 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A variable list that reads through to a chain of frozen, shared layers and keeps only its own writes.
+ * Cloning freezes the writes into a new layer that both lists then share,
+ * so copying an environment no longer copies every variable.
+ * Removing a variable that lives in a layer leaves a tombstone (a null) in the writes.
+ * When the chain gets too deep, it is flattened into a single layer.
+ * <p>
+ * Frozen layers are never modified, so they can be read from several threads.
+ * Cloning (and snapshotting or restoring through MSVariableList) is synchronized, so one list,
+ * such as a template environment shared by batch workers, can be cloned and read from several threads at once.
+ * Writes are not synchronized: a list must not be written while other threads are using it.
+ */
+class LayeredVariableList extends IVariableList
+{
+	/**
+	 * How many layers a chain can have before it is flattened.
+	 */
+	private static final int MAX_DEPTH = 8;
+
+	/**
+	 * An immutable set of variables, on top of its parent.
+	 */
+	static final class Layer
+	{
+		/**
+		 * Variables and tombstones (null values) of this layer.
+		 */
+		final Map<String, IVariable> variables;
+		final Layer parent;
+		final int depth;
+
+		Layer(Map<String, IVariable> variables, Layer parent)
+		{
+			this.variables = variables;
+			this.parent = parent;
+			this.depth = parent == null ? 1 : parent.depth + 1;
+		}
+
+		/**
+		 * Collects every live variable of this layer and its parents.
+		 */
+		Map<String, IVariable> flatten()
+		{
+			Map<String, IVariable> map = parent == null ? new LinkedHashMap<>() : parent.flatten();
+			for(Map.Entry<String, IVariable> entry: variables.entrySet())
+			{
+				if(entry.getValue() == null) map.remove(entry.getKey());
+				else map.put(entry.getKey(), entry.getValue());
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * Volatile, along with <code>local</code>, so threads reading this list while another clones it
+	 * always see a consistent pair: freezing writes the new parent before the new writes map,
+	 * and lookups read the writes map before the parent.
+	 */
+	private volatile Layer parent;
+
+	private volatile Map<String, IVariable> local = new HashMap<>();
+
+	LayeredVariableList()
+	{
+		this.parent = null;
+	}
+
+	LayeredVariableList(Layer parent)
+	{
+		this.parent = parent;
+	}
+
+	/**
+	 * Creates a layered list on top of a copy of another list's variables.
+	 *
+	 * @param list the list to copy
+	 */
+	LayeredVariableList(IVariableList list)
+	{
+		if(list instanceof LayeredVariableList)
+		{
+			this.parent = ((LayeredVariableList)list).freeze();
+		}
+		else
+		{
+			Map<String, IVariable> variables = new HashMap<>();
+			for(String name: list.keySet()) variables.put(name, list.get(name, Target.UNKNOWN));
+			this.parent = new Layer(variables, null);
+		}
+	}
+
+	/**
+	 * Freezes this list's writes into a new layer, and returns it.
+	 * This list keeps reading through to the layer.
+	 *
+	 * @return the frozen layer, or null if there are no variables at all
+	 */
+	synchronized Layer freeze()
+	{
+		if(!local.isEmpty())
+		{
+			parent = new Layer(local, parent);
+			local = new HashMap<>();
+		}
+		if(parent != null && parent.depth > MAX_DEPTH)
+		{
+			parent = new Layer(parent.flatten(), null);
+		}
+		return parent;
+	}
+
+	/**
+	 * Replaces every variable with the variables of a frozen layer, without copying them.
+	 *
+	 * @param layer the layer, or null to remove every variable
+	 */
+	synchronized void restore(Layer layer)
+	{
+		parent = layer;
+		local = new HashMap<>();
+	}
+
+	/**
+	 * Finds a variable in the writes or the layers.
+	 *
+	 * @return the variable, or null if it isn't set
+	 */
+	IVariable find(String name)
+	{
+		Map<String, IVariable> local = this.local;
+		if(local.containsKey(name)) return local.get(name);
+
+		for(Layer layer = parent; layer != null; layer = layer.parent)
+		{
+			if(layer.variables.containsKey(name)) return layer.variables.get(name);
+		}
+		return null;
+	}
+
+	public void set(IVariable v)
+	{
+		local.put(v.getVariableName(), v);
+	}
+
+	public void remove(String name)
+	{
+		if(parent == null)
+		{
+			local.remove(name);
+		}
+		else
+		{
+			local.put(name, null);
+		}
+	}
+
+	public IVariable get(String name, Target t)
+	{
+		IVariable v = find(name);
+		return v == null ? super.get(name, t) : v;
+	}
+
+	public boolean has(String name)
+	{
+		return find(name) != null;
+	}
+
+	public Set<String> keySet()
+	{
+		return toMap().keySet();
+	}
+
+	/**
+	 * Gets every variable in this list.
+	 *
+	 * @return a new map of variable names and variables
+	 */
+	synchronized Map<String, IVariable> toMap()
+	{
+		return new Layer(local, parent).flatten();
+	}
+
+	/**
+	 * Creates a copy of this list in constant time. Both lists share this list's variables as a frozen layer.
+	 *
+	 * @return the copy
+	 */
+	public LayeredVariableList clone()
+	{
+		return new LayeredVariableList(freeze());
+	}
+
+	public String toString()
+	{
+		return toMap().toString();
+	}
+}
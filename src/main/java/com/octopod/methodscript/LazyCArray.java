@@ -0,0 +1,212 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A CArray whose elements are converted from Java objects the first time they are accessed.
+ * Until then, each element is held by a placeholder that remembers which source element it stands for,
+ * so the array can still be modified by scripts without losing track of the source.
+ * Only reading single elements is lazy: every other method that looks at the elements
+ * (listing, searching, sorting, removing, cloning or comparing the array) converts every remaining element first.
+ * This class is not thread-safe.
+ */
+class LazyCArray extends CArray
+{
+	/**
+	 * Stands in for a source element that hasn't been converted yet.
+	 */
+	private static final class Pending extends CString
+	{
+		final int index;
+
+		Pending(int index, Target t)
+		{
+			super("", t);
+			this.index = index;
+		}
+	}
+
+	private static Construct[] placeholders(int size, Target t)
+	{
+		Construct[] items = new Construct[size];
+		for(int i = 0; i < size; i++) items[i] = new Pending(i, t);
+		return items;
+	}
+
+	/**
+	 * The source elements, or null once every element has been converted.
+	 */
+	private List<?> source;
+
+	/**
+	 * The converted elements, by source index.
+	 */
+	private Construct[] converted;
+
+	private final Target t;
+
+	LazyCArray(List<?> source, Target t)
+	{
+		super(t, placeholders(source.size(), t));
+		this.source = source;
+		this.converted = new Construct[source.size()];
+		this.t = t;
+	}
+
+	/**
+	 * Converts a placeholder into its source element, or returns the construct as-is if it isn't a placeholder.
+	 */
+	private Construct resolve(Construct c)
+	{
+		if(!(c instanceof Pending) || source == null) return c;
+
+		int index = ((Pending)c).index;
+		Construct value = converted[index];
+		if(value == null)
+		{
+			value = converted[index] = CommandHelper.toConstruct(source.get(index));
+		}
+		return value;
+	}
+
+	/**
+	 * Converts every remaining element and replaces the placeholders in the underlying array.
+	 */
+	private void materialize()
+	{
+		if(source == null) return;
+
+		long size = super.size();
+		for(int i = 0; i < size; i++)
+		{
+			Construct c = super.get(i, t);
+			if(c instanceof Pending)
+			{
+				super.set(new CInt(i, t), resolve(c), t);
+			}
+		}
+
+		source = null;
+		converted = null;
+	}
+
+	public Construct get(Construct index, Target t)
+	{
+		return resolve(super.get(index, t));
+	}
+
+	public Construct get(int index, Target t)
+	{
+		return resolve(super.get(index, t));
+	}
+
+	public Construct get(String index, Target t)
+	{
+		return resolve(super.get(index, t));
+	}
+
+	public List<Construct> asList()
+	{
+		materialize();
+		return super.asList();
+	}
+
+	public Set<Construct> keySet()
+	{
+		materialize();
+		return super.keySet();
+	}
+
+	public boolean contains(Construct c)
+	{
+		materialize();
+		return super.contains(c);
+	}
+
+	public CArray indexesOf(Construct value)
+	{
+		materialize();
+		return super.indexesOf(value);
+	}
+
+	public Construct getIndexForValue(Construct value, Target t)
+	{
+		materialize();
+		return super.getIndexForValue(value, t);
+	}
+
+	public Construct remove(Construct construct)
+	{
+		materialize();
+		return super.remove(construct);
+	}
+
+	public void removeValue(Construct construct)
+	{
+		materialize();
+		super.removeValue(construct);
+	}
+
+	public CArray slice(int begin, int end, Target t)
+	{
+		materialize();
+		return (CArray)super.slice(begin, end, t);
+	}
+
+	public void sort(SortType sort)
+	{
+		materialize();
+		super.sort(sort);
+	}
+
+	public CArray deepClone(Target t)
+	{
+		materialize();
+		return super.deepClone(t);
+	}
+
+	public boolean equals(Object o)
+	{
+		materialize();
+		if(o instanceof LazyCArray) ((LazyCArray)o).materialize();
+		return super.equals(o);
+	}
+
+	public int hashCode()
+	{
+		materialize();
+		return super.hashCode();
+	}
+
+	public String val()
+	{
+		materialize();
+		return super.val();
+	}
+
+	public String toString()
+	{
+		materialize();
+		return super.toString();
+	}
+
+	public CArray clone()
+	{
+		materialize();
+		try
+		{
+			return (CArray)super.clone();
+		}
+		catch(Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.octopod.methodscript;
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.commandhelper.CommandHelperFileLocations;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.Procedure;
 import com.laytonsmith.core.Profiles;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.environments.CommandHelperEnvironment;
@@ -11,6 +12,8 @@ import com.laytonsmith.core.environments.GlobalEnv;
 import com.laytonsmith.core.taskmanager.TaskManager;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Octopod - octopodsquad@gmail.com
@@ -23,18 +26,42 @@ import java.io.IOException;
  */
 public class MSEnvironment
 {
-	private static Environment defaultEnvironment = null;
+	private static final Object lock = new Object();
 
 	/**
-	 * Gets CommandHelper's default environment.
+	 * Built once, then only ever cloned. Volatile so that threads creating environments
+	 * at the same time all see a fully built default environment.
+	 */
+	private static volatile Environment defaultEnvironment = null;
+
+	/**
+	 * Gets a copy of CommandHelper's default environment, building it the first time.
 	 * @return Environment
 	 */
 	private static Environment newEnvironment()
 	{
-		if(defaultEnvironment != null) {
-			return cloneEnvironment(defaultEnvironment);
+		Environment env = defaultEnvironment;
+		if(env == null)
+		{
+			synchronized(lock)
+			{
+				env = defaultEnvironment;
+				if(env == null)
+				{
+					env = defaultEnvironment = createDefaultEnvironment();
+				}
+			}
 		}
+		Environment copy = cloneEnvironment(env);
+		if(copy != null)
+		{
+			copyProcedures(copy, env.getEnv(GlobalEnv.class).GetProcs());
+		}
+		return copy;
+	}
 
+	private static Environment createDefaultEnvironment()
+	{
 		CommandHelperPlugin plugin = CommandHelperPlugin.self;
 		GlobalEnv gEnv;
 
@@ -51,13 +78,52 @@ public class MSEnvironment
 		}
 		catch (Profiles.InvalidProfileException | IOException e)
 		{
-			return cloneEnvironment(defaultEnvironment);
+			throw new IllegalStateException("Unable to create CommandHelper's default environment", e);
 		}
 
 		gEnv.SetDynamicScriptingMode(true);
+		//copying a layered variable list doesn't copy its variables
+		gEnv.SetVarList(new LayeredVariableList());
 		CommandHelperEnvironment cEnv = new CommandHelperEnvironment();
 
-		return defaultEnvironment = Environment.createEnvironment(gEnv, cEnv);
+		return Environment.createEnvironment(gEnv, cEnv);
+	}
+
+	/**
+	 * Replaces the environment every new MSEnvironment is copied from.
+	 * Used by HeadlessRuntime, where there is no CommandHelper plugin to build it from.
+	 *
+	 * @param environment the new default environment
+	 */
+	static void setDefaultEnvironment(Environment environment)
+	{
+		GlobalEnv gEnv = environment.getEnv(GlobalEnv.class);
+		gEnv.SetVarList(new LayeredVariableList(gEnv.GetVarList()));
+		synchronized(lock)
+		{
+			defaultEnvironment = environment;
+		}
+	}
+
+	/**
+	 * Gives a cloned environment its own copy of the original's procedures.
+	 * Concurrent maps stay concurrent; any other map becomes layered, so that procedure
+	 * libraries attached to the original are shared with the copy instead of copied into it.
+	 *
+	 * @param copy the cloned environment
+	 * @param procedures the procedures of the original environment
+	 */
+	private static void copyProcedures(Environment copy, Map<String, Procedure> procedures)
+	{
+		GlobalEnv gEnv = copy.getEnv(GlobalEnv.class);
+		if(procedures instanceof ConcurrentHashMap)
+		{
+			gEnv.SetProcs(new ConcurrentHashMap<>(procedures));
+		}
+		else
+		{
+			gEnv.SetProcs(LayeredProcedureMap.copyOf(procedures));
+		}
 	}
 
 	/**
@@ -74,6 +140,24 @@ public class MSEnvironment
 		}
 	}
 
+	/**
+	 * Creates an environment whose variables and procedures can be read and changed by several threads at once,
+	 * so it can be shared between scripts running asynchronously.
+	 * Copies of it (see <code>MSEnvironment(MSEnvironment)</code>) are concurrent as well.
+	 * Only the variables and procedures are made thread-safe; CommandHelper's other state,
+	 * such as the executor, should be set up before the environment is shared.
+	 *
+	 * @return the concurrent environment
+	 */
+	public static MSEnvironment concurrent()
+	{
+		Environment env = newEnvironment();
+		GlobalEnv gEnv = env.getEnv(GlobalEnv.class);
+		gEnv.SetVarList(new ConcurrentVariableList(gEnv.GetVarList()));
+		gEnv.SetProcs(new ConcurrentHashMap<>(gEnv.GetProcs()));
+		return new MSEnvironment(env);
+	}
+
 	private final Environment env;
 	private final Target t;
 
@@ -151,6 +235,7 @@ public class MSEnvironment
 		{
 			this.env = env.env.clone();
 			this.t = env.t;
+			copyProcedures(this.env, env.procedures.handle);
 			this.variables = new MSVariableList(GlobalEnvironment().GetVarList(), t);
 			this.procedures = new MSProcedureList(GlobalEnvironment().GetProcs());
 		}
@@ -166,6 +251,55 @@ public class MSEnvironment
 		return this;
 	}
 
+	/**
+	 * Gets who (console or player) is executing scripts in this environment.
+	 *
+	 * @return the command sender, or null
+	 */
+	public MCCommandSender getExecutor()
+	{
+		return CommandHelperEnvironment().GetCommandSender();
+	}
+
+	/**
+	 * Checks if this environment's variables and procedures are thread-safe.
+	 *
+	 * @return true if this environment was created by <code>concurrent()</code> or copied from one
+	 */
+	public boolean isConcurrent()
+	{
+		return variables.handle instanceof ConcurrentVariableList && procedures.handle instanceof ConcurrentHashMap;
+	}
+
+	/**
+	 * Creates a view of this environment for a single execution. It shares this environment's variables
+	 * and procedures, but has its own interrupt, so the execution can be stopped without stopping
+	 * other scripts running in this environment.
+	 *
+	 * @return the view
+	 */
+	MSEnvironment view()
+	{
+		Environment copy = cloneEnvironment(env);
+		if(copy == null)
+			throw new IllegalStateException("Unable to copy this MethodScriptEnvironment");
+
+		MSEnvironment view = new MSEnvironment(copy, t, variables, procedures);
+		view.setInterrupted(false);
+		return view;
+	}
+
+	/**
+	 * Sets whether scripts executing in this environment should stop.
+	 * CommandHelper checks this before evaluating each function.
+	 *
+	 * @param interrupted true to stop the scripts
+	 */
+	void setInterrupted(boolean interrupted)
+	{
+		GlobalEnvironment().SetInterrupt(interrupted);
+	}
+
 	/**
 	 * Gets the internal Environment.
 	 *
@@ -0,0 +1,294 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.abstraction.MCCommandSender;
+import com.laytonsmith.core.Procedure;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of pre-cloned environments.
+ * Environments are reset when they are returned to the pool:
+ * the variables, procedures and executor are restored to the template's.
+ * Environments that are never returned are detected once they are garbage collected,
+ * and are replaced so the pool doesn't shrink.
+ */
+public class MSEnvironmentPool
+{
+	private static final Logger logger = Logger.getLogger(MSEnvironmentPool.class.getName());
+
+	/**
+	 * What to do when acquiring an environment while none are available.
+	 */
+	public enum AcquirePolicy
+	{
+		/**
+		 * Waits until an environment is returned, or until the timeout runs out.
+		 */
+		BLOCK,
+
+		/**
+		 * Fails right away.
+		 */
+		FAIL_FAST
+	}
+
+	/**
+	 * Tracks an environment that has been handed out.
+	 */
+	private static class Lease extends WeakReference<MSEnvironment>
+	{
+		final long acquiredAt;
+
+		/**
+		 * Where the environment was acquired, or null if leak tracing is off.
+		 */
+		final Throwable site;
+
+		Lease(MSEnvironment env, ReferenceQueue<MSEnvironment> queue, Throwable site)
+		{
+			super(env, queue);
+			this.acquiredAt = System.currentTimeMillis();
+			this.site = site;
+		}
+	}
+
+	private final MSEnvironment template;
+	private final int size;
+	private final AcquirePolicy policy;
+	private final long timeoutNanos;
+
+	/**
+	 * The variables, procedures and executor every environment is reset to.
+	 * The variables and procedures are frozen layers shared by every environment, so resetting doesn't copy them.
+	 */
+	private final MSVariableList.Snapshot variables;
+	private final List<Map<String, Procedure>> procedures;
+	private final MCCommandSender executor;
+
+	private final LinkedBlockingQueue<MSEnvironment> idle;
+
+	private final Map<MSEnvironment, Lease> leased = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Keeps the leases reachable so they are enqueued once their environment is collected.
+	 */
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+	private final ReferenceQueue<MSEnvironment> collected = new ReferenceQueue<>();
+
+	private final AtomicLong leaks = new AtomicLong();
+
+	private volatile boolean leakTracing = false;
+
+	public MSEnvironmentPool(int size)
+	{
+		this(size, AcquirePolicy.BLOCK);
+	}
+
+	public MSEnvironmentPool(int size, AcquirePolicy policy)
+	{
+		this(new MSEnvironment(), size, policy, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a pool of copies of an environment.
+	 * Returned environments are reset to the variables and procedures the template has now;
+	 * later changes to the template aren't seen by the pool.
+	 *
+	 * @param template the environment to copy
+	 * @param size the number of environments in the pool
+	 * @param policy what to do when no environments are available
+	 * @param timeout how long to wait for an environment when blocking, 0 to wait forever
+	 * @param unit the unit of <code>timeout</code>
+	 */
+	public MSEnvironmentPool(MSEnvironment template, int size, AcquirePolicy policy, long timeout, TimeUnit unit)
+	{
+		if(size <= 0)
+			throw new IllegalArgumentException("size must be positive");
+
+		this.template = template;
+		this.size = size;
+		this.policy = policy;
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.variables = template.variables.snapshot();
+		this.procedures = Collections.singletonList(Collections.unmodifiableMap(template.procedures.toMap()));
+		this.executor = template.getExecutor();
+		this.idle = new LinkedBlockingQueue<>(size);
+
+		for(int i = 0; i < size; i++)
+		{
+			idle.add(new MSEnvironment(template));
+		}
+	}
+
+	/**
+	 * Sets whether to record where each environment was acquired, so leaks can be traced back.
+	 * This captures a stack trace on every acquire, so it's off by default.
+	 *
+	 * @param leakTracing whether to record acquire sites
+	 * @return this pool
+	 */
+	public MSEnvironmentPool setLeakTracing(boolean leakTracing)
+	{
+		this.leakTracing = leakTracing;
+		return this;
+	}
+
+	/**
+	 * Takes an environment from this pool. It should be given back using <code>release()</code>.
+	 *
+	 * @return an environment
+	 * @throws IllegalStateException if no environment is available under this pool's policy
+	 */
+	public MSEnvironment acquire()
+	{
+		expungeLeaks();
+
+		MSEnvironment env;
+
+		if(policy == AcquirePolicy.FAIL_FAST)
+		{
+			env = idle.poll();
+		}
+		else
+		{
+			try
+			{
+				env = timeoutNanos > 0 ? idle.poll(timeoutNanos, TimeUnit.NANOSECONDS) : idle.take();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for an environment", e);
+			}
+		}
+
+		if(env == null)
+		{
+			throw new IllegalStateException("No environments are available in this pool");
+		}
+
+		Lease lease = new Lease(env, collected, leakTracing ? new Throwable("Environment acquired here") : null);
+		leases.add(lease);
+		leased.put(env, lease);
+
+		return env;
+	}
+
+	/**
+	 * Resets an environment and gives it back to this pool.
+	 *
+	 * @param env an environment that was acquired from this pool
+	 * @throws IllegalArgumentException if the environment isn't leased from this pool
+	 */
+	public void release(MSEnvironment env)
+	{
+		Lease lease = leased.remove(env);
+		if(lease == null)
+		{
+			throw new IllegalArgumentException("This environment isn't leased from this pool");
+		}
+		leases.remove(lease);
+		lease.clear();
+
+		reset(env);
+		idle.offer(env);
+
+		expungeLeaks();
+	}
+
+	/**
+	 * Resets an environment back to the state this pool's template had when the pool was created.
+	 *
+	 * @param env the environment
+	 */
+	private void reset(MSEnvironment env)
+	{
+		env.variables.restore(variables);
+
+		if(env.procedures.handle instanceof LayeredProcedureMap)
+		{
+			((LayeredProcedureMap)env.procedures.handle).restore(procedures);
+		}
+		else
+		{
+			env.procedures.handle.clear();
+			env.procedures.set(procedures.get(0));
+		}
+
+		env.setExecutor(executor);
+	}
+
+	/**
+	 * Replaces environments that were garbage collected without being released.
+	 */
+	private void expungeLeaks()
+	{
+		Reference<? extends MSEnvironment> ref;
+		while((ref = collected.poll()) != null)
+		{
+			Lease lease = (Lease)ref;
+			if(!leases.remove(lease)) continue;
+
+			leaks.incrementAndGet();
+			logger.log(Level.WARNING, "An environment was never returned to its pool (leased for "
+					+ (System.currentTimeMillis() - lease.acquiredAt) + "ms)", lease.site);
+
+			idle.offer(new MSEnvironment(template));
+		}
+	}
+
+	/**
+	 * Gets the number of environments that are available right now.
+	 *
+	 * @return the number of idle environments
+	 */
+	public int getIdleCount()
+	{
+		return idle.size();
+	}
+
+	/**
+	 * Gets the number of environments that are currently leased.
+	 *
+	 * @return the number of leased environments
+	 */
+	public int getLeasedCount()
+	{
+		return leases.size();
+	}
+
+	/**
+	 * Gets the number of environments that were never returned to this pool.
+	 *
+	 * @return the number of leaked environments
+	 */
+	public long getLeakCount()
+	{
+		expungeLeaks();
+		return leaks.get();
+	}
+
+	public int getSize()
+	{
+		return size;
+	}
+
+	public AcquirePolicy getPolicy()
+	{
+		return policy;
+	}
+}
@@ -20,6 +20,17 @@ public class MSProcedureList
 		this.handle = handle;
 	}
 
+	/**
+	 * Creates a procedure list that reads through to this list, but keeps its own changes to itself.
+	 * Nothing is copied, so this list shouldn't be changed while the child is in use.
+	 *
+	 * @return the child list
+	 */
+	public MSProcedureList child()
+	{
+		return new MSProcedureList(new LayeredProcedureMap(handle));
+	}
+
 	/**
 	 * Singular method of including procedures in this script. All procedure names must start with an underscore.
 	 *
@@ -46,6 +57,22 @@ public class MSProcedureList
 		return handle.get(name);
 	}
 
+	/**
+	 * Extracts the body and parameters of every procedure in this list.
+	 *
+	 * @return a map of procedure names and their info
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the fields
+	 */
+	public Map<String, ProcedureInfo> getInfo()
+	{
+		Map<String, ProcedureInfo> info = new HashMap<>();
+		for(Map.Entry<String, Procedure> entry: handle.entrySet())
+		{
+			info.put(entry.getKey(), new ProcedureInfo(entry.getValue()));
+		}
+		return info;
+	}
+
 	public Map<String, Procedure> toMap()
 	{
 		return new HashMap<>(handle);
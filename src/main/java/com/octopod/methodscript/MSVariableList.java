@@ -2,7 +2,13 @@ package com.octopod.methodscript;
 
 import com.laytonsmith.core.constructs.*;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +25,57 @@ public class MSVariableList
 
 	private final Target t;
 
+	/**
+	 * Reads the map an IVariableList keeps its variables in, or is null if it can't be found.
+	 */
+	private static final MethodHandle VAR_LIST = varListGetter();
+
+	private static MethodHandle varListGetter()
+	{
+		try
+		{
+			Field field = IVariableList.class.getDeclaredField("varList");
+			if(!Map.class.isAssignableFrom(field.getType())) return null;
+			field.setAccessible(true);
+			return MethodHandles.lookup().unreflectGetter(field);
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * A copy of the variables of a list, taken by <code>snapshot()</code>.
+	 * The variables themselves are shared, not copied, so changes made inside
+	 * a variable's value (such as to the elements of an array) aren't undone by restoring it.
+	 */
+	public static final class Snapshot
+	{
+		/**
+		 * The frozen variables, if the snapshot was taken from a layered list.
+		 */
+		private final LayeredVariableList.Layer layer;
+
+		/**
+		 * The variables, if the snapshot wasn't taken from a layered list.
+		 */
+		private final IVariable[] variables;
+
+		private Snapshot(LayeredVariableList.Layer layer, IVariable[] variables)
+		{
+			this.layer = layer;
+			this.variables = variables;
+		}
+
+		private Collection<IVariable> variables()
+		{
+			if(variables != null) return Arrays.asList(variables);
+			if(layer != null) return layer.flatten().values();
+			return Collections.emptyList();
+		}
+	}
+
 	public MSVariableList(IVariableList handle, Target t)
 	{
 		this.handle = handle;
@@ -46,9 +103,94 @@ public class MSVariableList
 		return str;
 	}
 
+	/**
+	 * Creates a variable list that reads through to this list's current variables,
+	 * but keeps its own changes to itself. This list's variables are frozen and shared,
+	 * not copied, so this takes constant time once this list is layered.
+	 * Changes made to this list afterwards aren't seen by the child.
+	 *
+	 * @return the child list
+	 */
+	public MSVariableList child()
+	{
+		return new MSVariableList(new LayeredVariableList(handle), t);
+	}
+
+	/**
+	 * Gets the variables of a list, read straight from its storage when possible.
+	 * The returned map may be the list's own, so it must not be modified.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, IVariable> variables(IVariableList list)
+	{
+		if(list instanceof LayeredVariableList)
+		{
+			return ((LayeredVariableList)list).toMap();
+		}
+
+		if(list instanceof ConcurrentVariableList)
+		{
+			return ((ConcurrentVariableList)list).toMap();
+		}
+
+		if(VAR_LIST != null)
+		{
+			try
+			{
+				Map<String, IVariable> map = (Map<String, IVariable>)VAR_LIST.invoke(list);
+				if(map != null) return map;
+			}
+			catch(Throwable e) {}
+		}
+
+		Target t = Target.UNKNOWN;
+		Map<String, IVariable> map = new HashMap<>();
+		for(String name: list.keySet()) map.put(name, list.get(name, t));
+		return map;
+	}
+
+	/**
+	 * Finds a variable with a single lookup when the list's storage can be read directly.
+	 *
+	 * @return the variable, or null if it isn't set
+	 */
+	@SuppressWarnings("unchecked")
+	private IVariable find(String name)
+	{
+		if(handle instanceof LayeredVariableList)
+		{
+			return ((LayeredVariableList)handle).find(name);
+		}
+
+		if(handle instanceof ConcurrentVariableList)
+		{
+			return ((ConcurrentVariableList)handle).find(name);
+		}
+
+		if(VAR_LIST != null)
+		{
+			try
+			{
+				Map<String, IVariable> map = (Map<String, IVariable>)VAR_LIST.invoke(handle);
+				if(map != null) return map.get(name);
+			}
+			catch(Throwable e) {}
+		}
+
+		return handle.has(name) ? handle.get(name, t) : null;
+	}
+
+	/**
+	 * Gets the initial capacity a HashMap needs to hold <code>size</code> entries without resizing.
+	 */
+	private static int capacity(int size)
+	{
+		return size < 3 ? size + 1 : (int)(size / 0.75f + 1);
+	}
+
 	public void merge(MSVariableList other)
 	{
-		other.toList().stream().forEach(handle::set);
+		for(IVariable v: variables(other.handle).values()) handle.set(v);
 	}
 
 	/**
@@ -57,7 +199,48 @@ public class MSVariableList
 	 */
 	public void clear()
 	{
-		handle.keySet().stream().forEach(handle::remove);
+		if(handle instanceof LayeredVariableList)
+		{
+			((LayeredVariableList)handle).restore(null);
+			return;
+		}
+
+		String[] names = handle.keySet().toArray(new String[0]);
+		for(String name: names) handle.remove(name);
+	}
+
+	/**
+	 * Takes a snapshot of the variables in this list, to be restored later with <code>restore()</code>.
+	 * If this list is layered, its variables are frozen and shared instead of copied.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot()
+	{
+		if(handle instanceof LayeredVariableList)
+		{
+			return new Snapshot(((LayeredVariableList)handle).freeze(), null);
+		}
+		return new Snapshot(null, variables(handle).values().toArray(new IVariable[0]));
+	}
+
+	/**
+	 * Replaces every variable in this list with the variables of a snapshot.
+	 * No variables are created, so this doesn't allocate for each variable.
+	 * Restoring a layered snapshot into a layered list takes constant time.
+	 *
+	 * @param snapshot the snapshot, which can be restored any number of times
+	 */
+	public void restore(Snapshot snapshot)
+	{
+		if(handle instanceof LayeredVariableList && snapshot.variables == null)
+		{
+			((LayeredVariableList)handle).restore(snapshot.layer);
+			return;
+		}
+
+		clear();
+		for(IVariable v: snapshot.variables()) handle.set(v);
 	}
 
 	/**
@@ -87,6 +270,40 @@ public class MSVariableList
 			return CNull.NULL;
 	}
 
+	/**
+	 * Sets a variable by its key. Only the variable itself is created.
+	 *
+	 * @param key the key of the variable
+	 * @param c the construct to set the variable to
+	 */
+	public void set(VarKey key, Construct c)
+	{
+		handle.set(new IVariable(CClassType.AUTO, key.getName(), c, t));
+	}
+
+	/**
+	 * Gets the value of a variable by its key, without allocating. If no variable exists, CNull.NULL is returned.
+	 *
+	 * @param key the key of the variable
+	 * @return the value of the variable
+	 */
+	public Construct get(VarKey key)
+	{
+		IVariable v = find(key.getName());
+		return v == null ? CNull.NULL : v;
+	}
+
+	/**
+	 * Checks if a variable is set.
+	 *
+	 * @param key the key of the variable
+	 * @return true if the variable is set
+	 */
+	public boolean has(VarKey key)
+	{
+		return find(key.getName()) != null;
+	}
+
 	/**
 	 * Adds variables into the variable list from a map of string keys and construct values.
 	 *
@@ -94,9 +311,10 @@ public class MSVariableList
 	 */
 	public void set(Map<String, Construct> map)
 	{
-		map.keySet().stream().forEach(
-				(name) -> handle.set(new IVariable(CClassType.AUTO, fixVariableName(name), map.get(name), t))
-		);
+		for(Map.Entry<String, Construct> entry: map.entrySet())
+		{
+			handle.set(new IVariable(CClassType.AUTO, fixVariableName(entry.getKey()), entry.getValue(), t));
+		}
 	}
 
 	/**
@@ -106,20 +324,18 @@ public class MSVariableList
 	 */
 	public Map<String, Construct> toMap()
 	{
-		Map<String, Construct> map = new HashMap<>();
-		handle.keySet().stream().forEach(
-				(name) -> map.put(name, handle.get(name, t).ival())
-		);
+		Map<String, IVariable> variables = variables(handle);
+		Map<String, Construct> map = new HashMap<>(capacity(variables.size()));
+		for(Map.Entry<String, IVariable> entry: variables.entrySet())
+		{
+			map.put(entry.getKey(), entry.getValue().ival());
+		}
 		return map;
 	}
 
 	public List<IVariable> toList()
 	{
-		List<IVariable> list = new ArrayList<>();
-		handle.keySet().stream().forEach(
-				(name) -> list.add(handle.get(name, t))
-		);
-		return list;
+		return new ArrayList<>(variables(handle).values());
 	}
 
 }
@@ -0,0 +1,20 @@
+package com.octopod.methodscript;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class that should get a generated ConstructMarshaller.
+ * The marshaller is generated at compile time by <code>MarshallerProcessor</code>,
+ * and is picked up by <code>CommandHelper.toConstruct()</code> and <code>CommandHelper.fromConstruct()</code>.
+ * The fields of the class can't be private, since the marshaller accesses them directly.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Marshalled
+{
+}
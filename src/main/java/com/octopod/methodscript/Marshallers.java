@@ -0,0 +1,76 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+
+/**
+ * Finds the generated ConstructMarshaller of a class.
+ * The lookup is done once per class.
+ */
+final class Marshallers
+{
+	/**
+	 * The suffix of generated marshaller classes.
+	 */
+	static final String SUFFIX = "_ConstructMarshaller";
+
+	/**
+	 * Stands in for classes that have no marshaller, since ClassValue can't hold null.
+	 * <code>get()</code> never returns it.
+	 */
+	private static final ConstructMarshaller<Object> NONE = new ConstructMarshaller<Object>()
+	{
+		public CArray toConstruct(Object object)
+		{
+			throw new UnsupportedOperationException("No marshaller was generated for " + object.getClass().getName());
+		}
+
+		public Object fromConstruct(CArray array)
+		{
+			throw new UnsupportedOperationException("This class has no generated marshaller");
+		}
+	};
+
+	private static final ClassValue<ConstructMarshaller<?>> marshallers = new ClassValue<ConstructMarshaller<?>>()
+	{
+		protected ConstructMarshaller<?> computeValue(Class<?> type)
+		{
+			if(type.isArray() || type.isPrimitive()) return NONE;
+			try
+			{
+				Class<?> marshaller = Class.forName(nameOf(type.getName()), true, type.getClassLoader());
+				return (ConstructMarshaller<?>)marshaller.getConstructor().newInstance();
+			}
+			catch(ReflectiveOperationException | ClassCastException | LinkageError e)
+			{
+				return NONE;
+			}
+		}
+	};
+
+	private Marshallers() {}
+
+	/**
+	 * Gets the name of the marshaller generated for a class.
+	 * The marshaller is in the same package, named after the class with nested classes separated by underscores.
+	 *
+	 * @param binaryName the binary name of the class, such as "a.b.Outer$Inner"
+	 * @return the name of its marshaller, such as "a.b.Outer_Inner_ConstructMarshaller"
+	 */
+	static String nameOf(String binaryName)
+	{
+		return binaryName.replace('$', '_') + SUFFIX;
+	}
+
+	/**
+	 * Gets the marshaller of a class.
+	 *
+	 * @param type the class
+	 * @return the marshaller, or null if the class doesn't have one
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> ConstructMarshaller<T> get(Class<T> type)
+	{
+		ConstructMarshaller<?> marshaller = marshallers.get(type);
+		return marshaller == NONE ? null : (ConstructMarshaller<T>)marshaller;
+	}
+}
@@ -3,15 +3,27 @@ package com.octopod.methodscript;
 import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.MethodScriptComplete;
 import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.CArray;
 import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjIntConsumer;
 
 /**
  * @author Octopod Created on 5/24/14
@@ -22,6 +34,27 @@ import java.io.IOException;
  */
 public class MethodScript
 {
+	/**
+	 * Where compile and execution timings are sent.
+	 */
+	private static volatile ScriptMetrics metrics = ScriptMetrics.NONE;
+
+	/**
+	 * Sets where compile and execution timings of every MethodScript are sent.
+	 * By default they are discarded; use a JmxScriptMetrics to expose them over JMX.
+	 *
+	 * @param metrics the metrics sink, or null to discard timings
+	 */
+	public static void setMetrics(ScriptMetrics metrics)
+	{
+		MethodScript.metrics = metrics == null ? ScriptMetrics.NONE : metrics;
+	}
+
+	public static ScriptMetrics getMetrics()
+	{
+		return metrics;
+	}
+
 	/**
 	 * The compiled MethodScript.
 	 */
@@ -32,6 +65,16 @@ public class MethodScript
 	 */
 	private final Target source;
 
+	/**
+	 * Whether this MethodScript has no side effects, or null if it hasn't been checked yet.
+	 */
+	private volatile Boolean pure = null;
+
+	/**
+	 * The variables this MethodScript reads, found the first time its results are memoized.
+	 */
+	private volatile VarKey[] reads = null;
+
 	/**
 	 * Compiles MethodScript from a string.
 	 *
@@ -83,10 +126,68 @@ public class MethodScript
 	public MethodScript(File file, boolean autorun)
 			throws ConfigCompileException, ConfigCompileGroupException, IOException
 	{
-		this(read(file), file, autorun);
+		this(ScriptSource.read(file.toPath()), file, autorun);
 	}
 
-	private MethodScript(String str, File file, boolean autorun)
+	/**
+	 * Compiles MethodScript from a UTF-8 encoded file.
+	 *
+	 * @param path the file to compile
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @throws IOException
+	 */
+	public MethodScript(Path path)
+			throws ConfigCompileException, ConfigCompileGroupException, IOException
+	{
+		this(path, false);
+	}
+
+	/**
+	 * Compiles MethodScript from a UTF-8 encoded file.
+	 *
+	 * @param path the file to compile
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @throws IOException
+	 */
+	public MethodScript(Path path, boolean autorun)
+			throws ConfigCompileException, ConfigCompileGroupException, IOException
+	{
+		this(ScriptSource.read(path), path.toFile(), autorun);
+	}
+
+	/**
+	 * Compiles MethodScript from a reader.
+	 * The reader is read until the end, but isn't closed.
+	 *
+	 * @param reader the reader to compile from
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @throws IOException
+	 */
+	public MethodScript(Reader reader)
+			throws ConfigCompileException, ConfigCompileGroupException, IOException
+	{
+		this(reader, false);
+	}
+
+	/**
+	 * Compiles MethodScript from a reader.
+	 * The reader is read until the end, but isn't closed.
+	 *
+	 * @param reader the reader to compile from
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @throws IOException
+	 */
+	public MethodScript(Reader reader, boolean autorun)
+			throws ConfigCompileException, ConfigCompileGroupException, IOException
+	{
+		this(ScriptSource.read(reader), null, autorun);
+	}
+
+	MethodScript(String str, File file, boolean autorun)
 			throws ConfigCompileException, ConfigCompileGroupException
 	{
 		//Sets the source to UNKNOWN if null
@@ -95,43 +196,90 @@ public class MethodScript
 			file = Target.UNKNOWN.file();
 		}
 
+		long start = System.nanoTime();
+
 		this.parseTree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(str, file, true));
-		Target t;
-		try
-		{
-			//The IDE thinks this might throw an NPE?
-			t = this.parseTree.getTarget();
-		}
-		catch(NullPointerException e)
+		this.source = targetOf(parseTree);
+
+		ScriptMetrics metrics = MethodScript.metrics;
+		if(metrics != ScriptMetrics.NONE)
 		{
-			t = Target.UNKNOWN;
+			metrics.compiled(getSource(), System.nanoTime() - start);
 		}
 
-		this.source = t;
-
 		if(autorun) execute();
 	}
 
-	private static String read(File file) throws IOException
+	/**
+	 * Wraps an already compiled ParseTree.
+	 *
+	 * @param parseTree the compiled MethodScript
+	 */
+	MethodScript(ParseTree parseTree)
 	{
-		final StringBuilder sb = new StringBuilder();
-
-		BufferedInputStream input = new BufferedInputStream(new FileInputStream(file));
+		this.parseTree = parseTree;
+		this.source = targetOf(parseTree);
+	}
 
-		int n;
-		while ((n = input.read()) != -1)
+	private static Target targetOf(ParseTree parseTree)
+	{
+		try
+		{
+			//The IDE thinks this might throw an NPE?
+			return parseTree.getTarget();
+		}
+		catch(NullPointerException e)
 		{
-			sb.append((char) n);
+			return Target.UNKNOWN;
 		}
+	}
 
-		input.close();
+	/**
+	 * Gets the compiled ParseTree of this MethodScript.
+	 *
+	 * @return the ParseTree
+	 */
+	public ParseTree getParseTree()
+	{
+		return parseTree;
+	}
 
-		return sb.toString();
+	/**
+	 * Creates a copy of this MethodScript specialized for variables whose values are already known.
+	 * Reads of those variables are replaced with their values, function calls that only depend on constants
+	 * are computed ahead of time, and <code>if</code> branches that can't be reached are removed.
+	 * Only string, number, boolean and null values are used, and only for variables the script never assigns.
+	 * The specialized script should only be executed where the variables would have these values anyway.
+	 *
+	 * @param bindings a map of variable names (with or without '@') and their values
+	 * @return the specialized MethodScript, sharing unchanged parts of this one's ParseTree
+	 */
+	public MethodScript specialize(Map<String, Construct> bindings)
+	{
+		return new MethodScript(PartialEvaluator.specialize(parseTree, bindings));
 	}
 
+	/**
+	 * Creates a copy of this MethodScript specialized for the variables of a list.
+	 *
+	 * @param bindings the known variables
+	 * @return the specialized MethodScript
+	 * @see #specialize(Map)
+	 */
+	public MethodScript specialize(MSVariableList bindings)
+	{
+		return specialize(bindings.toMap());
+	}
+
+	/**
+	 * Gets the file this MethodScript was compiled from.
+	 *
+	 * @return the path of the file, or "Unknown" if it wasn't compiled from a file
+	 */
 	public String getSource()
 	{
-		return source.file().toString();
+		File file = source.file();
+		return file == null ? "Unknown" : file.toString();
 	}
 
 	public Construct execute()
@@ -166,27 +314,391 @@ public class MethodScript
 			environment = new MSEnvironment();
 		}
 
-		//executes root auto_includes.ms
-		MethodScriptCompiler.registerAutoIncludes(environment.getHandle(), null);
+		//adds the procedures from the root auto_includes.ms
+		AutoIncludes.register(environment);
+
+		ScriptMetrics metrics = MethodScript.metrics;
+		if(metrics == ScriptMetrics.NONE)
+		{
+			return MethodScriptCompiler.execute(parseTree, environment.getHandle(), post, null);
+		}
+
+		long allocated = ThreadAllocation.current();
+		long start = System.nanoTime();
+		Throwable error = null;
+		try
+		{
+			return MethodScriptCompiler.execute(parseTree, environment.getHandle(), post, null);
+		}
+		catch(RuntimeException | Error e)
+		{
+			error = e;
+			throw e;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			if(allocated != -1) allocated = ThreadAllocation.current() - allocated;
+			metrics.executed(getSource(), nanos, allocated, error);
+		}
+	}
+
+	/**
+	 * Executes this MethodScript within a budget.
+	 * The script is interrupted once it runs past any of the budget's limits.
+	 * Interrupting it doesn't stop other scripts executing in the same environment.
+	 *
+	 * @param environment the environment to use, or null
+	 * @param post this will run after the code is done, can be null
+	 * @param budget the limits on this execution, or null for none
+	 * @return the Construct that results from this code
+	 * @throws BudgetExceededException if the script went over budget
+	 */
+	public Construct execute(MSEnvironment environment, MethodScriptComplete post, ExecutionBudget budget)
+	{
+		return execute(environment, post, budget, null);
+	}
+
+	/**
+	 * Executes this MethodScript within a budget, letting it be cancelled.
+	 *
+	 * @param cancellation what can cancel the script, or null
+	 * @throws java.util.concurrent.CancellationException if the script was cancelled
+	 * @see #execute(MSEnvironment, MethodScriptComplete, ExecutionBudget)
+	 */
+	Construct execute(MSEnvironment environment, MethodScriptComplete post, ExecutionBudget budget,
+			BudgetWatchdog.Cancellation cancellation)
+	{
+		if(budget == null)
+		{
+			budget = ExecutionBudget.UNLIMITED;
+		}
+
+		//nothing could ever interrupt the script
+		if(budget.isUnlimited() && cancellation == null)
+		{
+			return execute(environment, post);
+		}
+
+		if(environment == null)
+		{
+			environment = new MSEnvironment();
+		}
+
+		try(BudgetWatchdog.Execution execution = BudgetWatchdog.watch(environment, budget, cancellation))
+		{
+			Construct result;
+			try
+			{
+				result = execute(execution.getEnvironment(), post);
+			}
+			catch(RuntimeException e)
+			{
+				execution.rethrow(e);
+				throw e;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Checks if this MethodScript has no side effects, so that its results can be memoized.
+	 * This is detected from the ParseTree, conservatively: scripts that assign variables or call
+	 * functions CommandHelper can't compute ahead of time aren't pure.
+	 *
+	 * @return true if this MethodScript is pure
+	 */
+	public boolean isPure()
+	{
+		Boolean p = pure;
+		if(p == null)
+		{
+			pure = p = ScriptAnalysis.isPure(parseTree);
+		}
+		return p;
+	}
+
+	/**
+	 * Executes this MethodScript, reusing an earlier result if it is pure and has already run
+	 * with the same values for the variables it reads. Impure scripts, and scripts reading
+	 * an array that contains itself, are always executed.
+	 * Exceptions aren't cached, and cached arrays are copied before they're returned.
+	 *
+	 * @param environment the environment to use, or null
+	 * @param cache the cache of results
+	 * @return the Construct that results from this code
+	 */
+	public Construct execute(MSEnvironment environment, ResultCache cache)
+	{
+		return execute(environment, cache, isPure());
+	}
+
+	/**
+	 * Executes this MethodScript, reusing an earlier result if the caller declares it pure and it has already run
+	 * with the same values for the variables it reads. The declaration only applies to this call, so it doesn't
+	 * change how scripts shared through the compile cache are executed by anyone else.
+	 * A pure script's result must only depend on the variables it reads.
+	 *
+	 * @param environment the environment to use, or null
+	 * @param cache the cache of results
+	 * @param pure true to treat this MethodScript as pure, whatever <code>isPure()</code> detects
+	 * @return the Construct that results from this code
+	 */
+	public Construct execute(MSEnvironment environment, ResultCache cache, boolean pure)
+	{
+		if(!pure)
+		{
+			return execute(environment);
+		}
+
+		if(environment == null)
+		{
+			environment = new MSEnvironment();
+		}
+
+		String bindings = bindings(environment.variables);
+		if(bindings == null)
+		{
+			return execute(environment);
+		}
+
+		Construct result = cache.get(this, bindings);
+		if(result == null)
+		{
+			result = execute(environment);
+			cache.put(this, bindings, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Describes the values of the variables this MethodScript reads, including their types.
+	 * Arrays are described element by element, so arrays that only look alike as strings don't share a key.
+	 *
+	 * @return the description, or null if a variable holds an array that contains itself
+	 */
+	private String bindings(MSVariableList variables)
+	{
+		VarKey[] keys = reads;
+		if(keys == null)
+		{
+			Set<String> names = ScriptAnalysis.readVariables(parseTree);
+			keys = new VarKey[names.size()];
+			int i = 0;
+			for(String name: names) keys[i++] = VarKey.of(name);
+			reads = keys;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for(VarKey key: keys)
+		{
+			Construct value = variables.get(key);
+			if(value instanceof IVariable) value = ((IVariable)value).ival();
+			sb.append(key.getName()).append('=');
+			if(!describe(value, sb, Collections.newSetFromMap(new IdentityHashMap<>()))) return null;
+			sb.append(';');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a length-prefixed description of a value and its type, recursing into arrays.
+	 *
+	 * @param seen the arrays currently being described
+	 * @return false if the value is an array that contains itself
+	 */
+	private static boolean describe(Construct value, StringBuilder sb, Set<CArray> seen)
+	{
+		sb.append(value.getClass().getSimpleName()).append(':');
+		if(!(value instanceof CArray))
+		{
+			String val = value.val();
+			sb.append(val.length()).append(':').append(val);
+			return true;
+		}
+
+		CArray array = (CArray)value;
+		if(!seen.add(array)) return false;
+
+		sb.append(array.inAssociativeMode() ? 'a' : 'n').append(array.size()).append('[');
+		for(Construct key: array.keySet())
+		{
+			if(!describe(key, sb, seen)) return false;
+			sb.append('=');
+			if(!describe(array.get(key, Target.UNKNOWN), sb, seen)) return false;
+			sb.append(',');
+		}
+		sb.append(']');
+
+		seen.remove(array);
+		return true;
+	}
+
+	/**
+	 * Executes this MethodScript once for every row of bindings, on the default ScriptExecutor.
+	 *
+	 * @param rows the variables of each row
+	 * @param template the environment each row starts from, or null to use a new environment
+	 * @return the result of each row, in the same order as the rows
+	 */
+	public List<Construct> executeBatch(BindingSource rows, MSEnvironment template)
+	{
+		final Construct[] results = new Construct[rows.size()];
+		executeBatch(rows, template, (result, row) -> results[row] = result);
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Executes this MethodScript once for every row of bindings, on the default ScriptExecutor,
+	 * with the rows split between one worker per processor.
+	 *
+	 * @param rows the variables of each row
+	 * @param template the environment each row starts from, or null to use a new environment
+	 * @param consumer receives each result along with the index of its row; it may be called from several threads
+	 */
+	public void executeBatch(BindingSource rows, MSEnvironment template, ObjIntConsumer<Construct> consumer)
+	{
+		executeBatch(rows, template, consumer, ScriptExecutor.getDefault(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Executes this MethodScript once for every row of bindings.
+	 * The rows are split into contiguous ranges, one per worker. Each worker copies the template once,
+	 * then reuses that environment for all of its rows, resetting the variables back to the template's between rows.
+	 * Procedures and other changes a row makes to the environment are kept for the worker's next row.
+	 * <p>
+	 * The calling thread is one of the workers: it runs the first range itself, then any range the executor
+	 * hasn't started yet, and only waits for ranges that are already running. So calling this from a script
+	 * running on the same executor can't deadlock, even when every thread of the executor is busy.
+	 * Returns once every row is done; if any row throws, the first exception is rethrown.
+	 *
+	 * @param rows the variables of each row
+	 * @param template the environment each row starts from, or null to use a new environment
+	 * @param consumer receives each result along with the index of its row; it may be called from several threads
+	 * @param executor the executor to run the other workers on
+	 * @param workers the number of workers to split the rows between
+	 */
+	public void executeBatch(final BindingSource rows, final MSEnvironment template, final ObjIntConsumer<Construct> consumer,
+			ScriptExecutor executor, int workers)
+	{
+		int size = rows.size();
+		if(size == 0) return;
+
+		workers = Math.max(1, Math.min(workers, size));
 
-		return MethodScriptCompiler.execute(parseTree, environment.getHandle(), post, null);
+		//a range is run by whoever claims it first, the executor or the calling thread
+		final AtomicBoolean[] claimed = new AtomicBoolean[workers];
+		final int[] bounds = new int[workers + 1];
+		for(int w = 0; w < workers; w++)
+		{
+			claimed[w] = new AtomicBoolean();
+			bounds[w + 1] = (int)((long)size * (w + 1) / workers);
+		}
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+		for(int w = 1; w < workers; w++)
+		{
+			final int worker = w;
+			futures[w] = executor.submit(() -> {
+				if(claimed[worker].compareAndSet(false, true))
+				{
+					executeRows(rows, bounds[worker], bounds[worker + 1], template, consumer);
+				}
+				return null;
+			});
+		}
+
+		Throwable error = null;
+		boolean[] ranHere = new boolean[workers];
+		for(int w = 0; w < workers; w++)
+		{
+			if(!claimed[w].compareAndSet(false, true)) continue;
+			ranHere[w] = true;
+			try
+			{
+				executeRows(rows, bounds[w], bounds[w + 1], template, consumer);
+			}
+			catch(RuntimeException | Error e)
+			{
+				if(error == null) error = e;
+			}
+		}
+
+		for(int w = 1; w < workers; w++)
+		{
+			if(ranHere[w]) continue;
+			try
+			{
+				futures[w].join();
+			}
+			catch(CompletionException e)
+			{
+				if(error == null) error = e.getCause() == null ? e : e.getCause();
+			}
+		}
+
+		if(error instanceof RuntimeException) throw (RuntimeException)error;
+		if(error instanceof Error) throw (Error)error;
+		if(error != null) throw new CompletionException(error);
+	}
+
+	private void executeRows(BindingSource rows, int from, int to, MSEnvironment template, ObjIntConsumer<Construct> consumer)
+	{
+		MSEnvironment environment = template == null ? new MSEnvironment() : new MSEnvironment(template);
+		MSVariableList.Snapshot initial = environment.variables.snapshot();
+
+		for(int row = from; row < to; row++)
+		{
+			if(row > from)
+			{
+				environment.variables.restore(initial);
+			}
+			rows.bind(row, environment.variables);
+			consumer.accept(execute(environment), row);
+		}
+	}
+
+	/**
+	 * Executes this MethodScript on the default ScriptExecutor.
+	 *
+	 * @param environment the environment to use, or null
+	 * @param done this will run after the code is done, can be null
+	 * @return a future holding the result of this MethodScript
+	 */
+	public CompletableFuture<Construct> executeAsync(final MSEnvironment environment, final MethodScriptComplete done)
+	{
+		return executeAsync(environment, done, ScriptExecutor.getDefault());
+	}
+
+	/**
+	 * Executes this MethodScript on a ScriptExecutor.
+	 * Exceptions thrown by the script complete the returned future exceptionally.
+	 *
+	 * @param environment the environment to use, or null
+	 * @param done this will run after the code is done, can be null
+	 * @param executor the executor to run this MethodScript on
+	 * @return a future holding the result of this MethodScript
+	 */
+	public CompletableFuture<Construct> executeAsync(final MSEnvironment environment, final MethodScriptComplete done, ScriptExecutor executor)
+	{
+		return executor.execute(this, environment, done);
 	}
 
 	/**
-	 * Executes this MethodScript on a different thread.
+	 * Executes this MethodScript within a budget on the default ScriptExecutor.
+	 * Cancelling the returned future stops the script before it evaluates its next function.
 	 *
-	 * @return the thread this MethodScript is executing on
+	 * @param environment the environment to use, or null
+	 * @param done this will run after the code is done, can be null
+	 * @param budget the limits on this execution
+	 * @return a future holding the result of this MethodScript
 	 */
-	public Thread executeAsync(final MSEnvironment environment, final MethodScriptComplete done)
+	public CompletableFuture<Construct> executeAsync(final MSEnvironment environment, final MethodScriptComplete done, ExecutionBudget budget)
 	{
-		Thread thread = new Thread() {
-			public void run() {execute(environment, done);}
-		};
-		thread.start();
-		return thread;
+		return ScriptExecutor.getDefault().execute(this, environment, done, budget);
 	}
 
-	public Thread executeAsync()
+	public CompletableFuture<Construct> executeAsync()
 	{
 		return executeAsync(null, null);
 	}
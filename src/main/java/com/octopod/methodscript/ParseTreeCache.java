@@ -0,0 +1,412 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache of compiled ParseTrees, stored in a directory as compact binary files.
+ * Entries are keyed by the hash of their source and are only used if they were written
+ * by the same version of CommandHelper, so changing either one invalidates the entry.
+ * Writing an entry is best-effort: a cache that can't be written to only logs a warning.
+ * Only trees made of plain constructs (functions, variables, strings, numbers, booleans, null and void)
+ * can be stored; other trees are simply compiled every time.
+ */
+public class ParseTreeCache
+{
+	private static final Logger logger = Logger.getLogger(ParseTreeCache.class.getName());
+
+	/**
+	 * The name of the cache directory, when placed beside the scripts.
+	 */
+	public static final String DIRECTORY = ".mscache";
+
+	private static final String EXTENSION = ".mst";
+
+	private static final int MAGIC = 0x4D535443; // "MSTC"
+	private static final int FORMAT = 1;
+
+	private static final byte FUNCTION = 0;
+	private static final byte STRING = 1;
+	private static final byte INT = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte NULL = 5;
+	private static final byte VOID = 6;
+	private static final byte VARIABLE = 7;
+
+	/**
+	 * The version of CommandHelper this cache is written for.
+	 */
+	private static final String COMPILER_VERSION = compilerVersion();
+
+	/**
+	 * Identifies the CommandHelper build, using its jar's version if it has one,
+	 * or the size and modification time of the jar otherwise.
+	 *
+	 * @return the compiler version
+	 */
+	private static String compilerVersion()
+	{
+		String version = MethodScriptCompiler.class.getPackage().getImplementationVersion();
+		String build = "";
+		try
+		{
+			URL location = MethodScriptCompiler.class.getProtectionDomain().getCodeSource().getLocation();
+			File jar = new File(location.toURI());
+			build = jar.length() + ":" + jar.lastModified();
+		}
+		catch(Exception e) {}
+		return version + "/" + build;
+	}
+
+	/**
+	 * Thrown while writing a tree that holds a construct this cache can't store.
+	 */
+	private static class UnsupportedConstructException extends IOException
+	{
+		UnsupportedConstructException(Construct c)
+		{
+			super("Can't cache " + c.getClass().getName());
+		}
+	}
+
+	private final Path directory;
+
+	/**
+	 * Creates a cache in a directory, which is created if it doesn't exist.
+	 *
+	 * @param directory the directory to store the cache in
+	 * @throws IOException
+	 */
+	public ParseTreeCache(Path directory) throws IOException
+	{
+		this.directory = Files.createDirectories(directory);
+	}
+
+	/**
+	 * Creates a cache beside a directory of scripts.
+	 *
+	 * @param scripts the directory holding the scripts
+	 * @return the cache
+	 * @throws IOException
+	 */
+	public static ParseTreeCache beside(Path scripts) throws IOException
+	{
+		return new ParseTreeCache(scripts.resolve(DIRECTORY));
+	}
+
+	/**
+	 * Compiles a UTF-8 encoded file, using the cached tree if there is one
+	 * and caching the compiled tree if there isn't.
+	 *
+	 * @param file the file to compile
+	 * @return the compiled script
+	 * @throws IOException
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public MethodScript compile(Path file) throws IOException, ConfigCompileException, ConfigCompileGroupException
+	{
+		ByteBuffer bytes = ScriptSource.readBytes(file);
+		return compile(file, bytes, ScriptCache.hash(bytes));
+	}
+
+	/**
+	 * Compiles source that has already been read and hashed.
+	 */
+	MethodScript compile(Path file, ByteBuffer bytes, String hash) throws IOException, ConfigCompileException, ConfigCompileGroupException
+	{
+		ParseTree tree = load(hash, file.toFile());
+		if(tree != null)
+		{
+			return new MethodScript(tree);
+		}
+
+		MethodScript script = new MethodScript(ScriptSource.decode(bytes), file.toFile(), false);
+		store(hash, script.getParseTree());
+		return script;
+	}
+
+	/**
+	 * Loads a cached tree.
+	 *
+	 * @param hash the hash of the tree's source
+	 * @param file the file the source came from
+	 * @return the tree, or null if it isn't cached for this version of CommandHelper
+	 * @throws IOException
+	 */
+	public ParseTree load(String hash, File file) throws IOException
+	{
+		//Read onto the heap rather than mapped, so a mapping doesn't outlive the read and keep the file
+		//locked on Windows, where it couldn't be replaced or deleted until the mapping was collected
+		ByteBuffer buffer;
+		try
+		{
+			buffer = ByteBuffer.wrap(Files.readAllBytes(path(hash)));
+		}
+		catch(NoSuchFileException e)
+		{
+			return null;
+		}
+
+		try
+		{
+			if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) return null;
+			if(!readString(buffer).equals(COMPILER_VERSION)) return null;
+			if(!readString(buffer).equals(hash)) return null;
+			return readTree(buffer, file);
+		}
+		catch(RuntimeException e)
+		{
+			//Truncated or corrupt entry
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a tree in the cache, replacing any existing entry.
+	 * This is best-effort: if the entry can't be written, a warning is logged and the cache is left as it was.
+	 *
+	 * @param hash the hash of the tree's source
+	 * @param tree the tree
+	 * @return false if the tree holds constructs that can't be cached, or the entry couldn't be written
+	 */
+	public boolean store(String hash, ParseTree tree)
+	{
+		Path temp = null;
+		try
+		{
+			temp = Files.createTempFile(directory, hash, ".tmp");
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				writeString(out, COMPILER_VERSION);
+				writeString(out, hash);
+				writeTree(out, tree);
+			}
+
+			try
+			{
+				Files.move(temp, path(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, path(hash), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		}
+		catch(UnsupportedConstructException e)
+		{
+			return false;
+		}
+		catch(IOException e)
+		{
+			logger.log(Level.WARNING, "Unable to cache the compiled script " + hash + " in " + directory, e);
+			return false;
+		}
+		finally
+		{
+			deleteQuietly(temp);
+		}
+	}
+
+	private static void deleteQuietly(Path path)
+	{
+		if(path == null) return;
+		try
+		{
+			Files.deleteIfExists(path);
+		}
+		catch(IOException e) {}
+	}
+
+	/**
+	 * Deletes the entries of some hashes, if they are cached.
+	 *
+	 * @param hashes the hashes of the entries to delete
+	 * @throws IOException
+	 */
+	public void remove(Collection<String> hashes) throws IOException
+	{
+		for(String hash: hashes) Files.deleteIfExists(path(hash));
+	}
+
+	/**
+	 * Deletes every entry whose hash isn't in <code>hashes</code>.
+	 * This includes the entries of every other user of the cache's directory.
+	 *
+	 * @param hashes the hashes of the entries to keep
+	 * @throws IOException
+	 */
+	public void retain(Collection<String> hashes) throws IOException
+	{
+		Set<String> keep = new HashSet<>(hashes);
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION))
+		{
+			for(Path path: stream)
+			{
+				String name = path.getFileName().toString();
+				if(!keep.contains(name.substring(0, name.length() - EXTENSION.length())))
+				{
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+	private Path path(String hash)
+	{
+		return directory.resolve(hash + EXTENSION);
+	}
+
+	private static void writeTree(DataOutputStream out, ParseTree tree) throws IOException
+	{
+		Construct data = tree.getData();
+		Class<?> type = data.getClass();
+
+		if(type == CFunction.class)
+		{
+			out.writeByte(FUNCTION);
+			writeString(out, data.val());
+		}
+		else if(type == CString.class)
+		{
+			out.writeByte(STRING);
+			writeString(out, data.val());
+		}
+		else if(type == CInt.class)
+		{
+			out.writeByte(INT);
+			out.writeLong(((CInt)data).getInt());
+		}
+		else if(type == CDouble.class)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble(((CDouble)data).getDouble());
+		}
+		else if(type == CBoolean.class)
+		{
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(((CBoolean)data).getBoolean());
+		}
+		else if(data == CNull.NULL)
+		{
+			out.writeByte(NULL);
+		}
+		else if(data == CVoid.VOID)
+		{
+			out.writeByte(VOID);
+		}
+		else if(type == IVariable.class)
+		{
+			out.writeByte(VARIABLE);
+			writeString(out, ((IVariable)data).getVariableName());
+		}
+		else
+		{
+			throw new UnsupportedConstructException(data);
+		}
+
+		Target t = data.getTarget();
+		out.writeInt(t.line());
+		out.writeInt(t.col());
+
+		List<ParseTree> children = tree.getChildren();
+		out.writeInt(children.size());
+		for(ParseTree child: children)
+		{
+			writeTree(out, child);
+		}
+	}
+
+	private static ParseTree readTree(ByteBuffer in, File file)
+	{
+		byte tag = in.get();
+
+		String str = null;
+		long l = 0;
+		double d = 0;
+		boolean b = false;
+
+		switch(tag)
+		{
+			case FUNCTION: case STRING: case VARIABLE: str = readString(in); break;
+			case INT: l = in.getLong(); break;
+			case DOUBLE: d = in.getDouble(); break;
+			case BOOLEAN: b = in.get() != 0; break;
+		}
+
+		Target t = new Target(in.getInt(), file, in.getInt());
+
+		Construct data;
+		switch(tag)
+		{
+			case FUNCTION: data = new CFunction(str, t); break;
+			case STRING: data = new CString(str, t); break;
+			case INT: data = new CInt(l, t); break;
+			case DOUBLE: data = new CDouble(d, t); break;
+			case BOOLEAN: data = CBoolean.get(b); break;
+			case NULL: data = CNull.NULL; break;
+			case VOID: data = CVoid.VOID; break;
+			case VARIABLE: data = new IVariable(CClassType.AUTO, str, CNull.NULL, t); break;
+			default: throw new IllegalStateException("Unknown tag " + tag);
+		}
+
+		ParseTree tree = new ParseTree(data);
+		int children = in.getInt();
+		for(int i = 0; i < children; i++)
+		{
+			tree.addChild(readTree(in, file));
+		}
+		return tree;
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException
+	{
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		int length = in.getInt();
+		if(length < 0 || length > in.remaining())
+		{
+			//Corrupt entry, which load() treats as a miss
+			throw new IllegalStateException("String length " + length + " is out of bounds");
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
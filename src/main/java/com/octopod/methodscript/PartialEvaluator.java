@@ -0,0 +1,275 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Optimizable;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.core.functions.FunctionBase;
+import com.laytonsmith.core.functions.FunctionList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Specializes a compiled ParseTree for variables whose values are known ahead of time.
+ * Reads of those variables are replaced with their values, calls to functions CommandHelper marks as
+ * <code>CONSTANT_OFFLINE</code> are folded once all of their arguments are constants,
+ * and <code>if</code>/<code>ifelse</code> branches behind a constant condition are removed.
+ * The original tree is never modified; unchanged subtrees are shared with the result.
+ * <p>
+ * Only scalar values (strings, numbers, booleans and null) are substituted, since arrays can be changed by scripts.
+ * A variable is only substituted if every place the script uses it is an argument to a function known to just read it,
+ * and nothing is substituted at all if the script evaluates or includes other code.
+ * Procedure and closure bodies have their own variables, so they are left as they are.
+ */
+final class PartialEvaluator
+{
+	/**
+	 * Functions that only read the variables passed to them, besides those CommandHelper marks as <code>CONSTANT_OFFLINE</code>.
+	 * Any other function might assign a variable it is given, so variables passed to one are never substituted.
+	 */
+	private static final Set<String> READERS = new HashSet<>(Arrays.asList(
+			"__autoconcat__", "sconcat", "concat", "g", "if", "ifelse", "and", "or", "not", "return",
+			"array", "array_get", "array_size", "array_index_exists", "msg", "broadcast", "console", "die"
+	));
+
+	/**
+	 * Functions that run code that can't be seen ahead of time.
+	 */
+	private static final Set<String> DYNAMIC = new HashSet<>(Arrays.asList(
+			"eval", "include", "call_proc", "call_proc_array"
+	));
+
+	/**
+	 * Functions whose bodies have their own variables.
+	 */
+	static final Set<String> SCOPES = new HashSet<>(Arrays.asList(
+			"proc", "closure", "iclosure", "rclosure", "bind"
+	));
+
+	private final Map<String, Construct> bindings;
+
+	private PartialEvaluator(Map<String, Construct> bindings)
+	{
+		this.bindings = bindings;
+	}
+
+	/**
+	 * Specializes a tree.
+	 *
+	 * @param tree the compiled tree
+	 * @param bindings the known variables, by name (including '@'); non-scalar values are ignored
+	 * @return the specialized tree, or the same tree if nothing could be specialized
+	 */
+	static ParseTree specialize(ParseTree tree, Map<String, Construct> bindings)
+	{
+		Map<String, Construct> usable = new HashMap<>();
+		if(!isDynamic(tree))
+		{
+			Set<String> written = new HashSet<>();
+			collectWritten(tree, null, written);
+			for(Map.Entry<String, Construct> entry: bindings.entrySet())
+			{
+				String name = entry.getKey().charAt(0) == '@' ? entry.getKey() : '@' + entry.getKey();
+				if(isScalar(entry.getValue()) && !written.contains(name))
+				{
+					usable.put(name, entry.getValue());
+				}
+			}
+		}
+		return new PartialEvaluator(usable).visit(tree);
+	}
+
+	private static boolean isScalar(Construct c)
+	{
+		return c instanceof CString || c instanceof CInt || c instanceof CDouble || c instanceof CBoolean || c instanceof CNull;
+	}
+
+	private static String functionName(ParseTree tree)
+	{
+		return tree.getData() instanceof CFunction ? tree.getData().val() : null;
+	}
+
+	private static boolean isDynamic(ParseTree tree)
+	{
+		if(DYNAMIC.contains(functionName(tree))) return true;
+		for(ParseTree child: tree.getChildren())
+		{
+			if(isDynamic(child)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the variables that are used anywhere other than as an argument to a function that only reads them.
+	 *
+	 * @param parent the function the tree is an argument to, or null if it is a statement of a non-function node
+	 */
+	private static void collectWritten(ParseTree tree, CFunction parent, Set<String> written)
+	{
+		Construct data = tree.getData();
+		if(data instanceof IVariable)
+		{
+			if(parent != null && !isReader(parent))
+			{
+				written.add(((IVariable)data).getVariableName());
+			}
+			return;
+		}
+
+		CFunction function = data instanceof CFunction ? (CFunction)data : null;
+		if(function != null && SCOPES.contains(function.val())) return;
+
+		for(ParseTree child: tree.getChildren())
+		{
+			collectWritten(child, function, written);
+		}
+	}
+
+	private static boolean isReader(CFunction function)
+	{
+		if(READERS.contains(function.val())) return true;
+		return constantOfflineFunction(function) != null;
+	}
+
+	/**
+	 * Gets a function if CommandHelper marks it as <code>CONSTANT_OFFLINE</code>.
+	 * Those functions run without an environment, so they can't assign variables either.
+	 *
+	 * @return the function, or null if it isn't known or isn't CONSTANT_OFFLINE
+	 */
+	private static Function constantOfflineFunction(CFunction data)
+	{
+		FunctionBase base;
+		try
+		{
+			base = FunctionList.getFunction(data);
+		}
+		catch(ConfigCompileException e)
+		{
+			return null;
+		}
+
+		if(!(base instanceof Function) || !(base instanceof Optimizable)) return null;
+		if(!((Optimizable)base).optimizationOptions().contains(Optimizable.OptimizationOption.CONSTANT_OFFLINE)) return null;
+		return (Function)base;
+	}
+
+	private ParseTree visit(ParseTree tree)
+	{
+		Construct data = tree.getData();
+
+		if(data instanceof IVariable)
+		{
+			Construct value = bindings.get(((IVariable)data).getVariableName());
+			return value == null ? tree : new ParseTree(value);
+		}
+
+		if(tree.getChildren().isEmpty() || (data instanceof CFunction && SCOPES.contains(data.val())))
+		{
+			return tree;
+		}
+
+		List<ParseTree> children = tree.getChildren();
+		ParseTree[] visited = new ParseTree[children.size()];
+		boolean changed = false;
+		for(int i = 0; i < visited.length; i++)
+		{
+			visited[i] = visit(children.get(i));
+			changed |= visited[i] != children.get(i);
+		}
+
+		//the root and other non-function nodes only hold statements, so there's nothing to prune or fold
+		if(data instanceof CFunction)
+		{
+			String name = data.val();
+			if(name.equals("if") || name.equals("ifelse"))
+			{
+				ParseTree pruned = prune(visited);
+				if(pruned != null) return pruned;
+			}
+
+			ParseTree folded = fold((CFunction)data, visited);
+			if(folded != null) return folded;
+		}
+
+		if(!changed) return tree;
+
+		ParseTree copy = new ParseTree(data);
+		for(ParseTree child: visited) copy.addChild(child);
+		return copy;
+	}
+
+	/**
+	 * Gets the truth of a constant condition, or null if it isn't a constant this pass understands.
+	 */
+	private static Boolean truth(ParseTree condition)
+	{
+		Construct c = condition.getData();
+		if(!condition.getChildren().isEmpty()) return null;
+		if(c instanceof CBoolean) return ((CBoolean)c).getBoolean();
+		if(c instanceof CNull) return false;
+		if(c instanceof CInt) return ((CInt)c).getInt() != 0;
+		if(c instanceof CDouble) return ((CDouble)c).getDouble() != 0;
+		return null;
+	}
+
+	/**
+	 * Removes the branches of <code>if(cond, then, [else])</code> and
+	 * <code>ifelse(cond, then, cond, then, ..., [else])</code> that can't be reached.
+	 *
+	 * @return the branch that is always taken, or null if it depends on a condition that isn't constant
+	 */
+	private static ParseTree prune(ParseTree[] args)
+	{
+		for(int i = 0; i + 1 < args.length; i += 2)
+		{
+			Boolean truth = truth(args[i]);
+			if(truth == null)
+			{
+				//only the conditions before this one were removed; the rest still has to run
+				if(i == 0) return null;
+				ParseTree rest = new ParseTree(new CFunction("ifelse", args[i].getTarget()));
+				for(int j = i; j < args.length; j++) rest.addChild(args[j]);
+				return rest;
+			}
+			if(truth) return args[i + 1];
+		}
+		return args.length % 2 == 1 ? args[args.length - 1] : new ParseTree(CVoid.VOID);
+	}
+
+	/**
+	 * Executes a call to a CONSTANT_OFFLINE function whose arguments are all constants.
+	 *
+	 * @return the result, or null if the call can't be folded
+	 */
+	private static ParseTree fold(CFunction data, ParseTree[] args)
+	{
+		Construct[] values = new Construct[args.length];
+		for(int i = 0; i < args.length; i++)
+		{
+			if(!args[i].getChildren().isEmpty() || !isScalar(args[i].getData())) return null;
+			values[i] = args[i].getData();
+		}
+
+		Function function = constantOfflineFunction(data);
+		if(function == null) return null;
+
+		try
+		{
+			//CommandHelper's own optimizer runs these functions without an environment
+			Construct result = function.exec(data.getTarget(), null, values);
+			return isScalar(result) ? new ParseTree(result) : null;
+		}
+		catch(RuntimeException e)
+		{
+			//leave calls that fail to run time, where they'll fail with the script's own error handling
+			return null;
+		}
+	}
+}
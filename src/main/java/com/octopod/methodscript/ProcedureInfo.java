@@ -0,0 +1,147 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.Procedure;
+import com.laytonsmith.core.constructs.Construct;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The compiled body and parameters of a Procedure, which CommandHelper keeps private.
+ * The private fields are looked up once, when this class is loaded.
+ */
+public final class ProcedureInfo
+{
+	/**
+	 * A private field of Procedure, or why it couldn't be read.
+	 */
+	private static final class Accessor
+	{
+		final String name;
+		final MethodHandle getter;
+		final ReflectiveOperationException failure;
+
+		Accessor(String name)
+		{
+			MethodHandle getter = null;
+			ReflectiveOperationException failure = null;
+			try
+			{
+				Field field = Procedure.class.getDeclaredField(name);
+				field.setAccessible(true);
+				getter = MethodHandles.lookup().unreflectGetter(field);
+			}
+			catch(ReflectiveOperationException e)
+			{
+				failure = e;
+			}
+			this.name = name;
+			this.getter = getter;
+			this.failure = failure;
+		}
+
+		Object get(Procedure procedure)
+		{
+			if(getter == null)
+				throw new IllegalStateException("Unable to read Procedure." + name + " in this version of CommandHelper", failure);
+
+			try
+			{
+				return getter.invoke(procedure);
+			}
+			catch(RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch(Throwable e)
+			{
+				throw new IllegalStateException("Unable to read Procedure." + name, e);
+			}
+		}
+	}
+
+	private static final Accessor TREE = new Accessor("tree");
+	private static final Accessor ORIGINALS = new Accessor("originals");
+
+	/**
+	 * Extracts the ParseTree of a Procedure's body.
+	 *
+	 * @param procedure the procedure
+	 * @return the body
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the field
+	 */
+	static ParseTree tree(Procedure procedure)
+	{
+		return (ParseTree)TREE.get(procedure);
+	}
+
+	/**
+	 * Extracts the parameters of a Procedure, along with their default values.
+	 *
+	 * @param procedure the procedure
+	 * @return a map of parameter names and default values
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the field
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Construct> originals(Procedure procedure)
+	{
+		return (Map<String, Construct>)ORIGINALS.get(procedure);
+	}
+
+	private final Procedure procedure;
+	private final ParseTree tree;
+	private final Map<String, Construct> parameters;
+
+	/**
+	 * Extracts the body and parameters of a Procedure.
+	 *
+	 * @param procedure the procedure
+	 * @throws IllegalStateException if this version of CommandHelper doesn't have the fields
+	 */
+	public ProcedureInfo(Procedure procedure)
+	{
+		this.procedure = procedure;
+		this.tree = tree(procedure);
+		Map<String, Construct> originals = originals(procedure);
+		this.parameters = originals == null ? Collections.emptyMap() : Collections.unmodifiableMap(originals);
+	}
+
+	public Procedure getProcedure()
+	{
+		return procedure;
+	}
+
+	public String getName()
+	{
+		return procedure.getName();
+	}
+
+	/**
+	 * Gets the compiled body of the procedure. It is shared with the procedure, so it shouldn't be modified.
+	 *
+	 * @return the body
+	 */
+	public ParseTree getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * Gets the parameters of the procedure, in order, along with their default values.
+	 *
+	 * @return a read-only map of parameter names and default values
+	 */
+	public Map<String, Construct> getParameters()
+	{
+		return parameters;
+	}
+
+	public String toString()
+	{
+		return getName() + parameters.keySet();
+	}
+}
@@ -0,0 +1,137 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Procedure;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of procedures that is compiled once and then shared, unchanged, by any number of environments.
+ * Attaching a library doesn't copy its procedures into the environment: the environment looks them up
+ * in the library, after its own procedures. Procedures an environment defines itself (or removes)
+ * never change the library.
+ */
+public final class ProcedureLibrary
+{
+	private final Map<String, Procedure> procedures;
+
+	/**
+	 * Creates a library from already compiled procedures. The map is copied.
+	 *
+	 * @param procedures a map of procedure names and procedures
+	 */
+	public ProcedureLibrary(Map<String, Procedure> procedures)
+	{
+		this.procedures = Collections.unmodifiableMap(new HashMap<>(procedures));
+	}
+
+	/**
+	 * Compiles and executes scripts in a scratch environment,
+	 * and creates a library from the procedures they define.
+	 *
+	 * @param scripts the scripts that define the procedures
+	 * @return the library
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public static ProcedureLibrary compile(String... scripts) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		MethodScript[] compiled = new MethodScript[scripts.length];
+		for(int i = 0; i < scripts.length; i++)
+		{
+			compiled[i] = new MethodScript(scripts[i]);
+		}
+		return define(compiled);
+	}
+
+	/**
+	 * Compiles and executes UTF-8 encoded files in a scratch environment,
+	 * and creates a library from the procedures they define.
+	 *
+	 * @param files the files that define the procedures
+	 * @return the library
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 * @throws IOException
+	 */
+	public static ProcedureLibrary compile(Path... files) throws ConfigCompileException, ConfigCompileGroupException, IOException
+	{
+		MethodScript[] compiled = new MethodScript[files.length];
+		for(int i = 0; i < files.length; i++)
+		{
+			compiled[i] = new MethodScript(files[i]);
+		}
+		return define(compiled);
+	}
+
+	/**
+	 * Executes scripts in a scratch environment and collects the procedures they define.
+	 */
+	private static ProcedureLibrary define(MethodScript... scripts)
+	{
+		MSEnvironment scratch = new MSEnvironment();
+		Map<String, Procedure> before = scratch.procedures.toMap();
+
+		for(MethodScript script: scripts)
+		{
+			script.execute(scratch);
+		}
+
+		Map<String, Procedure> procedures = new HashMap<>();
+		for(Map.Entry<String, Procedure> entry: scratch.procedures.handle.entrySet())
+		{
+			if(before.get(entry.getKey()) != entry.getValue())
+			{
+				procedures.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return new ProcedureLibrary(procedures);
+	}
+
+	/**
+	 * Attaches this library to an environment. The library's procedures replace any
+	 * procedures of the same name that were attached before, but not those the environment defined itself.
+	 * Copies of the environment share the library as well.
+	 * This takes constant time, unless the environment is concurrent (see <code>MSEnvironment.concurrent()</code>),
+	 * in which case the procedures are copied into it.
+	 *
+	 * @param environment the environment
+	 */
+	public void attach(MSEnvironment environment)
+	{
+		Map<String, Procedure> handle = environment.procedures.handle;
+		if(handle instanceof LayeredProcedureMap)
+		{
+			((LayeredProcedureMap)handle).attach(procedures);
+		}
+		else
+		{
+			environment.procedures.set(procedures);
+		}
+	}
+
+	public Procedure get(String name)
+	{
+		return procedures.get(name);
+	}
+
+	/**
+	 * Gets the procedures of this library.
+	 *
+	 * @return a read-only map of procedure names and procedures
+	 */
+	public Map<String, Procedure> getProcedures()
+	{
+		return procedures;
+	}
+
+	public int size()
+	{
+		return procedures.size();
+	}
+}
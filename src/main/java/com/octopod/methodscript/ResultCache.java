@@ -0,0 +1,204 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of the results of pure MethodScripts, keyed on the compiled script
+ * and the values of the variables it reads. Entries expire after a time to live, and the least recently
+ * used entries are evicted once the cache is full.
+ * See <code>MethodScript.execute(MSEnvironment, ResultCache)</code>.
+ */
+public class ResultCache
+{
+	/**
+	 * The default maximum number of results.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final class Key
+	{
+		final MethodScript script;
+		final String bindings;
+		final int hash;
+
+		Key(MethodScript script, String bindings)
+		{
+			this.script = script;
+			this.bindings = bindings;
+			this.hash = System.identityHashCode(script) * 31 + bindings.hashCode();
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key)) return false;
+			Key other = (Key)o;
+			return other.script == script && other.bindings.equals(bindings);
+		}
+	}
+
+	private static final class Entry
+	{
+		final Construct result;
+		final long expires;
+
+		Entry(Construct result, long expires)
+		{
+			this.result = result;
+			this.expires = expires;
+		}
+	}
+
+	private final int maxSize;
+	private final long ttlNanos;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a cache of up to 10000 results that never expire.
+	 */
+	public ResultCache()
+	{
+		this(DEFAULT_MAX_SIZE, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxSize the maximum number of results
+	 * @param ttl how long results are kept for, or 0 to keep them until they're evicted
+	 * @param unit the unit of <code>ttl</code>
+	 */
+	public ResultCache(int maxSize, long ttl, TimeUnit unit)
+	{
+		if(maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be positive");
+		if(ttl < 0)
+			throw new IllegalArgumentException("ttl can't be negative");
+		this.maxSize = maxSize;
+		this.ttlNanos = unit.toNanos(ttl);
+	}
+
+	/**
+	 * Deep copies arrays, so callers can't change the cached result or any array nested in it.
+	 */
+	private static Construct copy(Construct result)
+	{
+		if(!(result instanceof CArray)) return result;
+		return ((CArray)result).deepClone(Target.UNKNOWN);
+	}
+
+	/**
+	 * Gets a cached result.
+	 *
+	 * @return a copy of the result, or null if it isn't cached or has expired
+	 */
+	Construct get(MethodScript script, String bindings)
+	{
+		Key key = new Key(script, bindings);
+		Entry entry;
+		synchronized(entries)
+		{
+			entry = entries.get(key);
+			if(entry != null && ttlNanos > 0 && System.nanoTime() - entry.expires > 0)
+			{
+				entries.remove(key);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+		}
+
+		if(entry == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copy(entry.result);
+	}
+
+	void put(MethodScript script, String bindings, Construct result)
+	{
+		Entry entry = new Entry(copy(result), System.nanoTime() + ttlNanos);
+		synchronized(entries)
+		{
+			entries.put(new Key(script, bindings), entry);
+
+			Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+			while(entries.size() > maxSize && it.hasNext())
+			{
+				it.next();
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes every result of a script from this cache.
+	 *
+	 * @param script the script
+	 */
+	public void invalidate(MethodScript script)
+	{
+		synchronized(entries)
+		{
+			entries.keySet().removeIf((key) -> key.script == script);
+		}
+	}
+
+	/**
+	 * Removes every result from this cache.
+	 */
+	public void clear()
+	{
+		synchronized(entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public int size()
+	{
+		synchronized(entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+}
@@ -0,0 +1,98 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Optimizable;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.functions.FunctionBase;
+import com.laytonsmith.core.functions.FunctionList;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Static checks on compiled ParseTrees, used to decide whether a script's results can be memoized.
+ */
+final class ScriptAnalysis
+{
+	/**
+	 * Control flow and array functions that have no side effects of their own.
+	 * Assignments aren't included, since they change the environment's variables.
+	 */
+	private static final Set<String> PURE = new HashSet<>(Arrays.asList(
+			"__autoconcat__", "sconcat", "g", "if", "ifelse", "and", "or", "not",
+			"array", "array_get", "array_size", "array_index_exists", "return"
+	));
+
+	private ScriptAnalysis() {}
+
+	/**
+	 * Gets the names of the variables a script reads, outside of procedure and closure bodies.
+	 *
+	 * @param tree the compiled script
+	 * @return the variable names, including '@', in the order they first appear
+	 */
+	static Set<String> readVariables(ParseTree tree)
+	{
+		Set<String> names = new LinkedHashSet<>();
+		collectVariables(tree, names);
+		return names;
+	}
+
+	private static void collectVariables(ParseTree tree, Set<String> names)
+	{
+		if(tree.getData() instanceof IVariable)
+		{
+			names.add(((IVariable)tree.getData()).getVariableName());
+		}
+		if(tree.getData() instanceof CFunction && PartialEvaluator.SCOPES.contains(tree.getData().val()))
+		{
+			return;
+		}
+		for(ParseTree child: tree.getChildren())
+		{
+			collectVariables(child, names);
+		}
+	}
+
+	/**
+	 * Checks if a script has no side effects, so running it again with the same variables gives the same result.
+	 * This is conservative: only functions CommandHelper marks as <code>CONSTANT_OFFLINE</code>
+	 * and a few control flow and array functions are allowed, so scripts that assign variables,
+	 * define procedures or call anything else aren't considered pure.
+	 *
+	 * @param tree the compiled script
+	 * @return true if the script is pure
+	 */
+	static boolean isPure(ParseTree tree)
+	{
+		if(tree.getData() instanceof CFunction && !isPure((CFunction)tree.getData()))
+		{
+			return false;
+		}
+		for(ParseTree child: tree.getChildren())
+		{
+			if(!isPure(child)) return false;
+		}
+		return true;
+	}
+
+	private static boolean isPure(CFunction function)
+	{
+		if(PURE.contains(function.val())) return true;
+
+		try
+		{
+			FunctionBase base = FunctionList.getFunction(function);
+			return base instanceof Optimizable
+					&& ((Optimizable)base).optimizationOptions().contains(Optimizable.OptimizationOption.CONSTANT_OFFLINE);
+		}
+		catch(ConfigCompileException e)
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of compiled MethodScript, keyed on a hash of the source text.
+ * Entries are weighed by the length of their source and the least recently used
+ * entries are evicted once the total weight goes over the maximum.
+ */
+public class ScriptCache
+{
+	/**
+	 * The default maximum weight (total characters of cached source).
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024;
+
+	private static final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	});
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Hashes a string into a hex-encoded SHA-256 digest.
+	 *
+	 * @param str the string to hash
+	 * @return the hex-encoded digest
+	 */
+	static String hash(String str)
+	{
+		return hash(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Hashes bytes into a hex-encoded SHA-256 digest.
+	 *
+	 * @param bytes the bytes to hash
+	 * @return the hex-encoded digest
+	 */
+	static String hash(byte[] bytes)
+	{
+		return hex(digest.get().digest(bytes));
+	}
+
+	/**
+	 * Hashes the remaining bytes of a buffer into a hex-encoded SHA-256 digest.
+	 * The position of the buffer isn't changed.
+	 *
+	 * @param bytes the bytes to hash
+	 * @return the hex-encoded digest
+	 */
+	static String hash(ByteBuffer bytes)
+	{
+		MessageDigest md = digest.get();
+		md.update(bytes.duplicate());
+		return hex(md.digest());
+	}
+
+	private static String hex(byte[] hash)
+	{
+		char[] chars = new char[hash.length * 2];
+		for(int i = 0; i < hash.length; i++)
+		{
+			chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static class Entry
+	{
+		final MethodScript script;
+		final long weight;
+
+		Entry(MethodScript script, long weight)
+		{
+			this.script = script;
+			this.weight = weight;
+		}
+	}
+
+	private final long maxWeight;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long weight = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public ScriptCache()
+	{
+		this(DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * Creates a cache that holds up to <code>maxWeight</code> characters of source.
+	 *
+	 * @param maxWeight the maximum total weight of this cache
+	 */
+	public ScriptCache(long maxWeight)
+	{
+		if(maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight must be positive");
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Gets the compiled MethodScript for a string, compiling and caching it if it isn't cached yet.
+	 * The returned MethodScript is shared between all callers, so its ParseTree shouldn't be modified.
+	 *
+	 * @param str the script to compile
+	 * @return the compiled script
+	 * @throws ConfigCompileException
+	 * @throws ConfigCompileGroupException
+	 */
+	public MethodScript get(String str) throws ConfigCompileException, ConfigCompileGroupException
+	{
+		String key = hash(str);
+
+		synchronized(entries)
+		{
+			Entry entry = entries.get(key);
+			if(entry != null)
+			{
+				hits.incrementAndGet();
+				return entry.script;
+			}
+		}
+
+		misses.incrementAndGet();
+
+		//Compiles outside of the lock so other lookups aren't blocked by the compiler
+		MethodScript script = new MethodScript(str);
+		long w = Math.max(1, str.length());
+
+		//Scripts heavier than the whole cache are never cached
+		if(w > maxWeight) return script;
+
+		synchronized(entries)
+		{
+			Entry existing = entries.get(key);
+			if(existing != null) return existing.script;
+
+			entries.put(key, new Entry(script, w));
+			weight += w;
+			evict();
+		}
+
+		return script;
+	}
+
+	/**
+	 * Evicts the least recently used entries until this cache is under its maximum weight.
+	 * Must be called while holding the lock on <code>entries</code>.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while(weight > maxWeight && it.hasNext())
+		{
+			weight -= it.next().getValue().weight;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes a script from this cache.
+	 *
+	 * @param str the source of the script
+	 */
+	public void invalidate(String str)
+	{
+		String key = hash(str);
+		synchronized(entries)
+		{
+			Entry entry = entries.remove(key);
+			if(entry != null) weight -= entry.weight;
+		}
+	}
+
+	/**
+	 * Removes every script from this cache.
+	 */
+	public void clear()
+	{
+		synchronized(entries)
+		{
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	public int size()
+	{
+		synchronized(entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public long getWeight()
+	{
+		synchronized(entries)
+		{
+			return weight;
+		}
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+}
@@ -0,0 +1,372 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.MethodScriptComplete;
+import com.laytonsmith.core.constructs.Construct;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A bounded executor for running MethodScript asynchronously.
+ * At most <code>maxPending</code> scripts may be queued or running at once;
+ * anything past that is handled by the executor's rejection policy.
+ */
+public class ScriptExecutor
+{
+	/**
+	 * What to do with a script when the executor is full.
+	 */
+	public enum RejectionPolicy
+	{
+		/**
+		 * Completes the script's future exceptionally with a RejectedExecutionException.
+		 */
+		ABORT,
+
+		/**
+		 * Runs the script on the thread that submitted it.
+		 */
+		CALLER_RUNS,
+
+		/**
+		 * Waits until there is room in the executor.
+		 */
+		BLOCK
+	}
+
+	private static volatile ScriptExecutor defaultExecutor = null;
+
+	/**
+	 * Gets the executor used by <code>MethodScript.executeAsync()</code>.
+	 *
+	 * @return the default executor
+	 */
+	public static ScriptExecutor getDefault()
+	{
+		ScriptExecutor executor = defaultExecutor;
+		if(executor == null)
+		{
+			synchronized(ScriptExecutor.class)
+			{
+				executor = defaultExecutor;
+				if(executor == null)
+				{
+					executor = defaultExecutor = new ScriptExecutor();
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Sets the executor used by <code>MethodScript.executeAsync()</code>.
+	 * The previous default executor isn't shut down.
+	 *
+	 * @param executor the new default executor
+	 */
+	public static void setDefault(ScriptExecutor executor)
+	{
+		if(executor == null)
+			throw new IllegalArgumentException("executor can't be null");
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * Completes futures that run past their timeout.
+	 */
+	private static class Timer
+	{
+		static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+				daemonFactory("MethodScript-Timeout-"));
+	}
+
+	private static ThreadFactory daemonFactory(final String prefix)
+	{
+		final AtomicInteger count = new AtomicInteger();
+		return (r) -> {
+			Thread thread = new Thread(r, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread per task, or returns null if the JVM doesn't support them.
+	 *
+	 * @return the executor, or null
+	 */
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int maxPending;
+	private final RejectionPolicy rejectionPolicy;
+	private final long timeoutNanos;
+
+	/**
+	 * Creates an executor that uses virtual threads if supported,
+	 * or a pool of one thread per processor otherwise.
+	 * Up to 1024 scripts may be pending, extra scripts are rejected, and scripts don't time out.
+	 */
+	public ScriptExecutor()
+	{
+		this(0, 1024, RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates an executor.
+	 *
+	 * @param threads the number of threads in the pool, or 0 to use virtual threads if supported
+	 * @param maxPending the maximum number of scripts that may be queued or running at once
+	 * @param rejectionPolicy what to do with scripts past <code>maxPending</code>
+	 * @param timeout how long scripts may run for, or 0 for no limit
+	 * @param unit the unit of <code>timeout</code>
+	 */
+	public ScriptExecutor(int threads, int maxPending, RejectionPolicy rejectionPolicy, long timeout, TimeUnit unit)
+	{
+		if(threads < 0)
+			throw new IllegalArgumentException("threads can't be negative");
+		if(maxPending <= 0)
+			throw new IllegalArgumentException("maxPending must be positive");
+
+		ExecutorService executor = threads == 0 ? newVirtualThreadExecutor() : null;
+		if(executor == null)
+		{
+			int n = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+			executor = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(), daemonFactory("MethodScript-Async-"));
+		}
+
+		this.executor = executor;
+		this.maxPending = maxPending;
+		this.permits = new Semaphore(maxPending);
+		this.rejectionPolicy = rejectionPolicy;
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Executes a MethodScript on this executor.
+	 * Cancelling the returned future, or the script timing out, stops the script before it evaluates its next function.
+	 * Other scripts executing in the same environment keep running.
+	 *
+	 * @param script the script to execute
+	 * @param environment the environment to use, or null
+	 * @param done this will run after the code is done, can be null
+	 * @return a future holding the result of the script
+	 */
+	public CompletableFuture<Construct> execute(final MethodScript script, final MSEnvironment environment, final MethodScriptComplete done)
+	{
+		return execute(script, environment, done, ExecutionBudget.UNLIMITED);
+	}
+
+	/**
+	 * Executes a MethodScript within a budget on this executor.
+	 * Cancelling the returned future, or the script timing out, stops the script before it evaluates its next function.
+	 * Going over budget completes the future with a BudgetExceededException.
+	 *
+	 * @param script the script to execute
+	 * @param environment the environment to use, or null
+	 * @param done this will run after the code is done, can be null
+	 * @param budget the limits on the execution
+	 * @return a future holding the result of the script
+	 */
+	public CompletableFuture<Construct> execute(final MethodScript script, final MSEnvironment environment, final MethodScriptComplete done,
+			final ExecutionBudget budget)
+	{
+		final BudgetWatchdog.Cancellation cancellation = new BudgetWatchdog.Cancellation();
+		CompletableFuture<Construct> future = submit(() -> script.execute(environment, done, budget, cancellation));
+
+		//interrupting the worker doesn't stop a script, so a cancelled or timed out script is stopped through its environment
+		future.whenComplete((r, e) -> {
+			if(e != null) cancellation.cancel();
+		});
+		return future;
+	}
+
+	/**
+	 * Runs a task on this executor, using this executor's timeout.
+	 *
+	 * @param task the task
+	 * @return a future holding the result of the task
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> task)
+	{
+		return submit(task, timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs a task on this executor.
+	 * If the task runs past its timeout, its future completes with a TimeoutException
+	 * and the thread running it is interrupted. Cancelling the future also interrupts it.
+	 *
+	 * @param task the task
+	 * @param timeout how long the task may run for, or 0 for no limit
+	 * @param unit the unit of <code>timeout</code>
+	 * @return a future holding the result of the task
+	 */
+	public <T> CompletableFuture<T> submit(final Supplier<T> task, long timeout, TimeUnit unit)
+	{
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		if(!acquirePermit())
+		{
+			if(rejectionPolicy == RejectionPolicy.CALLER_RUNS)
+			{
+				run(task, future);
+			}
+			else
+			{
+				future.completeExceptionally(new RejectedExecutionException(
+						"Too many pending scripts (max " + maxPending + ")"));
+			}
+			return future;
+		}
+
+		//Whoever claims the task first either runs it (the worker) or drops it before it starts (a cancel or timeout).
+		//The permit is given back by the worker once the task has really finished, so scripts that time out
+		//but keep running still count against maxPending.
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		final Future<?> running;
+		try
+		{
+			running = executor.submit(() -> {
+				if(!claimed.compareAndSet(false, true)) return;
+				try
+				{
+					run(task, future);
+				}
+				finally
+				{
+					permits.release();
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			permits.release();
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		final Runnable stop = () -> {
+			running.cancel(true);
+			if(claimed.compareAndSet(false, true)) permits.release();
+		};
+
+		future.whenComplete((r, e) -> {
+			if(future.isCancelled()) stop.run();
+		});
+
+		long nanos = unit.toNanos(timeout);
+		if(nanos > 0)
+		{
+			final ScheduledFuture<?> timer = Timer.timer.schedule(() -> {
+				if(future.completeExceptionally(new TimeoutException("Script timed out after " + nanos + "ns")))
+				{
+					stop.run();
+				}
+			}, nanos, TimeUnit.NANOSECONDS);
+			future.whenComplete((r, e) -> timer.cancel(false));
+		}
+
+		return future;
+	}
+
+	private static <T> void run(Supplier<T> task, CompletableFuture<T> future)
+	{
+		if(future.isDone()) return;
+		try
+		{
+			future.complete(task.get());
+		}
+		catch(Throwable e)
+		{
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Takes a permit to run a task, following the rejection policy if none are available.
+	 *
+	 * @return true if a permit was taken
+	 */
+	private boolean acquirePermit()
+	{
+		if(rejectionPolicy != RejectionPolicy.BLOCK)
+		{
+			return permits.tryAcquire();
+		}
+
+		try
+		{
+			permits.acquire();
+			return true;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the number of scripts that are queued or running.
+	 *
+	 * @return the number of pending scripts
+	 */
+	public int getPendingCount()
+	{
+		return maxPending - permits.availablePermits();
+	}
+
+	public int getMaxPending()
+	{
+		return maxPending;
+	}
+
+	public RejectionPolicy getRejectionPolicy()
+	{
+		return rejectionPolicy;
+	}
+
+	/**
+	 * Stops accepting scripts. Scripts that were already submitted will still run.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	/**
+	 * Stops accepting scripts and interrupts the scripts that are running.
+	 */
+	public void shutdownNow()
+	{
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,35 @@
+package com.octopod.methodscript;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thrown when one or more scripts in a ScriptRepository fail to load.
+ * Every failure is collected, so all broken scripts can be reported at once.
+ */
+public class ScriptLoadException extends Exception
+{
+	private final Map<Path, Exception> failures;
+
+	public ScriptLoadException(Map<Path, Exception> failures)
+	{
+		super(failures.size() + " script(s) failed to load: " + failures.keySet());
+		this.failures = Collections.unmodifiableMap(failures);
+		for(Exception e: failures.values())
+		{
+			addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Gets the scripts that failed to load, and why.
+	 * The exceptions are usually ConfigCompileException, ConfigCompileGroupException or IOException.
+	 *
+	 * @return a map of script files and the exceptions they threw
+	 */
+	public Map<Path, Exception> getFailures()
+	{
+		return failures;
+	}
+}
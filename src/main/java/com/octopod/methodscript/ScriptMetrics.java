@@ -0,0 +1,37 @@
+package com.octopod.methodscript;
+
+/**
+ * Receives timings from MethodScript compilation and execution.
+ * Implementations are called on the thread that compiled or executed the script,
+ * so they must be thread-safe and should be cheap.
+ */
+public interface ScriptMetrics
+{
+	/**
+	 * Discards everything. This is the default.
+	 */
+	ScriptMetrics NONE = new ScriptMetrics()
+	{
+		public void compiled(String source, long nanos) {}
+
+		public void executed(String source, long nanos, long allocatedBytes, Throwable error) {}
+	};
+
+	/**
+	 * Called after a script is compiled.
+	 *
+	 * @param source the source of the script (see <code>MethodScript.getSource()</code>)
+	 * @param nanos how long compiling took
+	 */
+	void compiled(String source, long nanos);
+
+	/**
+	 * Called after a script is executed.
+	 *
+	 * @param source the source of the script (see <code>MethodScript.getSource()</code>)
+	 * @param nanos how long executing took
+	 * @param allocatedBytes an estimate of the memory allocated while executing, or -1 if the JVM can't tell
+	 * @param error the exception the script threw, or null
+	 */
+	void executed(String source, long nanos, long allocatedBytes, Throwable error);
+}
@@ -0,0 +1,267 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles every script in a directory tree, in parallel.
+ * The size, modification time and hash of each file is remembered,
+ * so reloading only recompiles the files that have changed.
+ * If a ParseTreeCache is given, unchanged scripts are also loaded from it instead of being recompiled after a restart.
+ * Reloading only deletes the cached trees of this repository's own scripts that changed or were deleted,
+ * so several repositories can share a cache directory.
+ */
+public class ScriptRepository
+{
+	/**
+	 * The extension of the files that are compiled.
+	 */
+	public static final String EXTENSION = ".ms";
+
+	/**
+	 * The number of files a single fork-join task compiles before it splits.
+	 */
+	private static final int THRESHOLD = 4;
+
+	/**
+	 * A compiled script and the state of the file it was compiled from.
+	 */
+	private static class Entry
+	{
+		final MethodScript script;
+		final long modified;
+		final long size;
+		final String hash;
+
+		Entry(MethodScript script, long modified, long size, String hash)
+		{
+			this.script = script;
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+		}
+	}
+
+	private final Path root;
+	private final ForkJoinPool pool;
+
+	/**
+	 * The persistent cache of compiled trees, or null.
+	 */
+	private final ParseTreeCache cache;
+
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+	public ScriptRepository(Path root)
+	{
+		this(root, ForkJoinPool.commonPool(), null);
+	}
+
+	public ScriptRepository(Path root, ForkJoinPool pool)
+	{
+		this(root, pool, null);
+	}
+
+	/**
+	 * Creates a repository of the scripts under a directory.
+	 * Nothing is compiled until <code>reload()</code> is called.
+	 *
+	 * @param root the directory holding the scripts
+	 * @param pool the pool to compile the scripts on
+	 * @param cache the persistent cache to load compiled trees from, or null
+	 */
+	public ScriptRepository(Path root, ForkJoinPool pool, ParseTreeCache cache)
+	{
+		this.root = root.toAbsolutePath().normalize();
+		this.pool = pool;
+		this.cache = cache;
+	}
+
+	/**
+	 * Compiles every new or changed script under the root directory and forgets scripts that were deleted.
+	 * A file whose size and modification time haven't changed isn't read again,
+	 * and a file whose contents hash the same isn't recompiled.
+	 * If a script fails to compile, or loading it throws, the previously compiled version of it is kept.
+	 *
+	 * @return the files that were compiled
+	 * @throws IOException if the directory couldn't be walked
+	 * @throws ScriptLoadException if any scripts failed to load; the other scripts are still loaded
+	 */
+	public synchronized Set<Path> reload() throws IOException, ScriptLoadException
+	{
+		final List<Path> files;
+		try(Stream<Path> stream = Files.walk(root))
+		{
+			files = stream
+					.filter((path) -> path.toString().endsWith(EXTENSION) && Files.isRegularFile(path))
+					.collect(Collectors.toList());
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+
+		Set<String> previous = hashes();
+		entries.keySet().retainAll(new HashSet<>(files));
+
+		Set<Path> compiled = ConcurrentHashMap.newKeySet();
+		Map<Path, Exception> failures = new ConcurrentHashMap<>();
+
+		pool.invoke(new LoadTask(files, 0, files.size(), compiled, failures));
+
+		if(cache != null)
+		{
+			previous.removeAll(hashes());
+			if(!previous.isEmpty()) cache.remove(previous);
+		}
+
+		if(!failures.isEmpty())
+		{
+			throw new ScriptLoadException(new HashMap<>(failures));
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Gets the hashes of the loaded scripts.
+	 */
+	private Set<String> hashes()
+	{
+		Set<String> hashes = new HashSet<>();
+		entries.values().forEach((entry) -> hashes.add(entry.hash));
+		return hashes;
+	}
+
+	/**
+	 * Loads a range of files, splitting the range in half until it is small enough.
+	 */
+	private class LoadTask extends RecursiveAction
+	{
+		final List<Path> files;
+		final int from, to;
+		final Set<Path> compiled;
+		final Map<Path, Exception> failures;
+
+		LoadTask(List<Path> files, int from, int to, Set<Path> compiled, Map<Path, Exception> failures)
+		{
+			this.files = files;
+			this.from = from;
+			this.to = to;
+			this.compiled = compiled;
+			this.failures = failures;
+		}
+
+		protected void compute()
+		{
+			if(to - from <= THRESHOLD)
+			{
+				for(int i = from; i < to; i++)
+				{
+					Path file = files.get(i);
+					try
+					{
+						if(load(file)) compiled.add(file);
+					}
+					catch(IOException | ConfigCompileException | ConfigCompileGroupException | RuntimeException e)
+					{
+						failures.put(file, e);
+					}
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(
+					new LoadTask(files, from, mid, compiled, failures),
+					new LoadTask(files, mid, to, compiled, failures)
+			);
+		}
+	}
+
+	/**
+	 * Loads a single file if it has changed.
+	 *
+	 * @param file the file to load
+	 * @return true if the file was compiled
+	 */
+	private boolean load(Path file) throws IOException, ConfigCompileException, ConfigCompileGroupException
+	{
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long modified = attributes.lastModifiedTime().toMillis();
+		long size = attributes.size();
+
+		Entry entry = entries.get(file);
+		if(entry != null && entry.modified == modified && entry.size == size)
+		{
+			return false;
+		}
+
+		ByteBuffer bytes = ScriptSource.readBytes(file);
+		String hash = ScriptCache.hash(bytes);
+
+		if(entry != null && entry.hash.equals(hash))
+		{
+			entries.put(file, new Entry(entry.script, modified, size, hash));
+			return false;
+		}
+
+		MethodScript script = cache != null
+				? cache.compile(file, bytes, hash)
+				: new MethodScript(ScriptSource.decode(bytes), file.toFile(), false);
+		entries.put(file, new Entry(script, modified, size, hash));
+		return true;
+	}
+
+	/**
+	 * Gets a compiled script.
+	 *
+	 * @param path the path of the script, relative to the root directory or absolute
+	 * @return the compiled script, or null if it isn't loaded
+	 */
+	public MethodScript get(Path path)
+	{
+		Entry entry = entries.get(root.resolve(path).normalize());
+		return entry == null ? null : entry.script;
+	}
+
+	/**
+	 * Gets every compiled script.
+	 *
+	 * @return a map of absolute paths and compiled scripts
+	 */
+	public Map<Path, MethodScript> getScripts()
+	{
+		Map<Path, MethodScript> scripts = new HashMap<>(entries.size() * 4 / 3 + 1);
+		entries.forEach((path, entry) -> scripts.put(path, entry.script));
+		return Collections.unmodifiableMap(scripts);
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public Path getRoot()
+	{
+		return root;
+	}
+}
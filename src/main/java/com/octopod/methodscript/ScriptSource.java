@@ -0,0 +1,115 @@
+package com.octopod.methodscript;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads MethodScript source from files and readers.
+ */
+final class ScriptSource
+{
+	/**
+	 * Files at least this large are memory-mapped instead of read into a buffer.
+	 */
+	static final int MAP_THRESHOLD = 64 * 1024;
+
+	private ScriptSource() {}
+
+	/**
+	 * Reads a UTF-8 encoded file into a string.
+	 *
+	 * @param path the file to read
+	 * @return the contents of the file
+	 * @throws IOException
+	 */
+	static String read(Path path) throws IOException
+	{
+		return decode(readBytes(path));
+	}
+
+	/**
+	 * Reads the raw bytes of a file.
+	 * Large files are memory-mapped, smaller files are read in bulk.
+	 *
+	 * @param path the file to read
+	 * @return a buffer holding the contents of the file
+	 * @throws IOException
+	 */
+	static ByteBuffer readBytes(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if(size > Integer.MAX_VALUE)
+			{
+				throw new IOException("File is too large to be a script: " + path);
+			}
+
+			if(size >= MAP_THRESHOLD)
+			{
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			while(buffer.hasRemaining() && channel.read(buffer) != -1);
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Decodes UTF-8 bytes into a string, skipping the byte order mark if there is one.
+	 * Malformed input is replaced rather than rejected.
+	 *
+	 * @param bytes the bytes to decode
+	 * @return the decoded string
+	 * @throws CharacterCodingException
+	 */
+	static String decode(ByteBuffer bytes) throws CharacterCodingException
+	{
+		if(bytes.remaining() >= 3
+				&& bytes.get(bytes.position()) == (byte)0xEF
+				&& bytes.get(bytes.position() + 1) == (byte)0xBB
+				&& bytes.get(bytes.position() + 2) == (byte)0xBF)
+		{
+			bytes.position(bytes.position() + 3);
+		}
+
+		CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(bytes);
+
+		return chars.toString();
+	}
+
+	/**
+	 * Reads everything from a reader into a string. The reader isn't closed.
+	 *
+	 * @param reader the reader
+	 * @return everything that was read
+	 * @throws IOException
+	 */
+	static String read(Reader reader) throws IOException
+	{
+		StringBuilder sb = new StringBuilder(8192);
+		char[] buffer = new char[8192];
+
+		int n;
+		while((n = reader.read(buffer)) != -1)
+		{
+			sb.append(buffer, 0, n);
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,115 @@
+package com.octopod.methodscript;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a single script: invocations, exceptions, compile time,
+ * a latency histogram and the memory allocated while executing.
+ */
+public class ScriptStats implements ScriptStatsMXBean
+{
+	private final String source;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong exceptions = new AtomicLong();
+	private final AtomicLong compiles = new AtomicLong();
+	private final AtomicLong compileTime = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+
+	public ScriptStats(String source)
+	{
+		this.source = source;
+	}
+
+	void compiled(long nanos)
+	{
+		compiles.incrementAndGet();
+		compileTime.addAndGet(nanos);
+	}
+
+	void executed(long nanos, long allocatedBytes, Throwable error)
+	{
+		latency.record(nanos);
+		if(allocatedBytes > 0) allocated.addAndGet(allocatedBytes);
+		if(error != null) exceptions.incrementAndGet();
+	}
+
+	/**
+	 * Gets the histogram of execution times, in nanoseconds.
+	 *
+	 * @return the histogram
+	 */
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+
+	public String getSource()
+	{
+		return source;
+	}
+
+	public long getInvocationCount()
+	{
+		return latency.getCount();
+	}
+
+	public long getExceptionCount()
+	{
+		return exceptions.get();
+	}
+
+	public long getCompileCount()
+	{
+		return compiles.get();
+	}
+
+	public long getTotalCompileTime()
+	{
+		return compileTime.get();
+	}
+
+	public double getMeanTime()
+	{
+		return latency.getMean();
+	}
+
+	public long getMaxTime()
+	{
+		return latency.getMax();
+	}
+
+	public long get50thPercentileTime()
+	{
+		return latency.getValueAtPercentile(50);
+	}
+
+	public long get90thPercentileTime()
+	{
+		return latency.getValueAtPercentile(90);
+	}
+
+	public long get99thPercentileTime()
+	{
+		return latency.getValueAtPercentile(99);
+	}
+
+	public long get999thPercentileTime()
+	{
+		return latency.getValueAtPercentile(99.9);
+	}
+
+	public long getAllocatedBytes()
+	{
+		return allocated.get();
+	}
+
+	public void reset()
+	{
+		latency.reset();
+		exceptions.set(0);
+		compiles.set(0);
+		compileTime.set(0);
+		allocated.set(0);
+	}
+}
@@ -0,0 +1,34 @@
+package com.octopod.methodscript;
+
+/**
+ * The statistics of a single script, as exposed over JMX by JmxScriptMetrics.
+ * All times are in nanoseconds.
+ */
+public interface ScriptStatsMXBean
+{
+	String getSource();
+
+	long getInvocationCount();
+
+	long getExceptionCount();
+
+	long getCompileCount();
+
+	long getTotalCompileTime();
+
+	double getMeanTime();
+
+	long getMaxTime();
+
+	long get50thPercentileTime();
+
+	long get90thPercentileTime();
+
+	long get99thPercentileTime();
+
+	long get999thPercentileTime();
+
+	long getAllocatedBytes();
+
+	void reset();
+}
@@ -0,0 +1,53 @@
+package com.octopod.methodscript;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads how much memory threads have allocated, on JVMs that support it.
+ */
+final class ThreadAllocation
+{
+	private static final com.sun.management.ThreadMXBean bean = bean();
+
+	private static com.sun.management.ThreadMXBean bean()
+	{
+		try
+		{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(bean instanceof com.sun.management.ThreadMXBean)
+			{
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+				if(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+				{
+					return sunBean;
+				}
+			}
+		}
+		catch(LinkageError | RuntimeException e) {}
+		return null;
+	}
+
+	private ThreadAllocation() {}
+
+	/**
+	 * Gets the total number of bytes a thread has allocated.
+	 *
+	 * @param thread the thread
+	 * @return the number of bytes, or -1 if the JVM can't tell
+	 */
+	static long of(Thread thread)
+	{
+		return bean == null ? -1 : bean.getThreadAllocatedBytes(thread.getId());
+	}
+
+	/**
+	 * Gets the total number of bytes the current thread has allocated.
+	 *
+	 * @return the number of bytes, or -1 if the JVM can't tell
+	 */
+	static long current()
+	{
+		return of(Thread.currentThread());
+	}
+}
@@ -0,0 +1,60 @@
+package com.octopod.methodscript;
+
+/**
+ * A variable name, normalized to start with '@' and interned once, for code that reads or sets
+ * the same variables over and over. Getting a variable by its key doesn't build or hash a new string.
+ * Keys are immutable and can be shared between threads and variable lists.
+ */
+public final class VarKey
+{
+	private final String name;
+	private final int hash;
+
+	private VarKey(String name)
+	{
+		this.name = name;
+		this.hash = name.hashCode();
+	}
+
+	/**
+	 * Creates the key of a variable name.
+	 * For example, <code>VarKey.of("var")</code> and <code>VarKey.of("@var")</code> are both the key of "@var".
+	 *
+	 * @param name the variable name, with or without '@'
+	 * @return the key
+	 */
+	public static VarKey of(String name)
+	{
+		if(name.isEmpty())
+			throw new IllegalArgumentException("Variable names can't be empty");
+		if(name.charAt(0) != '@')
+			name = '@' + name;
+		return new VarKey(name.intern());
+	}
+
+	/**
+	 * Gets the variable name, including '@'.
+	 *
+	 * @return the variable name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public int hashCode()
+	{
+		return hash;
+	}
+
+	public boolean equals(Object o)
+	{
+		//names are interned
+		return o == this || (o instanceof VarKey && ((VarKey)o).name == name);
+	}
+
+	public String toString()
+	{
+		return name;
+	}
+}
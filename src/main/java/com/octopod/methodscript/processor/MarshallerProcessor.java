@@ -0,0 +1,275 @@
+package com.octopod.methodscript.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a ConstructMarshaller for every class annotated with <code>@Marshalled</code>.
+ * Each marshaller reads and writes the class's fields directly,
+ * so primitive fields are converted without boxing and without a type check per field.
+ */
+@SupportedAnnotationTypes("com.octopod.methodscript.Marshalled")
+public class MarshallerProcessor extends AbstractProcessor
+{
+	/**
+	 * Must match <code>Marshallers.SUFFIX</code>.
+	 */
+	private static final String SUFFIX = "_ConstructMarshaller";
+
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round)
+	{
+		for(TypeElement annotation: annotations)
+		{
+			for(Element element: round.getElementsAnnotatedWith(annotation))
+			{
+				if(element.getKind() != ElementKind.CLASS)
+				{
+					error(element, "@Marshalled can only be used on classes");
+					continue;
+				}
+
+				try
+				{
+					generate((TypeElement)element);
+				}
+				catch(IOException e)
+				{
+					error(element, "Unable to generate a marshaller: " + e.getMessage());
+				}
+			}
+		}
+		return true;
+	}
+
+	private void error(Element element, String message)
+	{
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private void generate(TypeElement type) throws IOException
+	{
+		List<VariableElement> fields = new ArrayList<>();
+		for(VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements()))
+		{
+			Set<Modifier> modifiers = field.getModifiers();
+			if(modifiers.contains(Modifier.STATIC)) continue;
+			if(modifiers.contains(Modifier.PRIVATE))
+			{
+				error(field, "Fields of @Marshalled classes can't be private");
+				return;
+			}
+			fields.add(field);
+		}
+
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		String simpleName = flatName(type) + SUFFIX;
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+		StringBuilder sb = new StringBuilder();
+
+		if(!packageName.isEmpty())
+		{
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+
+		sb.append("import com.laytonsmith.core.constructs.*;\n");
+		sb.append("import com.octopod.methodscript.CommandHelper;\n");
+		sb.append("import com.octopod.methodscript.ConstructMarshaller;\n\n");
+
+		sb.append("/**\n * Generated by MarshallerProcessor for ").append(typeName).append(".\n */\n");
+		sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		sb.append("public final class ").append(simpleName)
+				.append(" implements ConstructMarshaller<").append(typeName).append(">\n{\n");
+
+		//toConstruct
+		sb.append("\tpublic CArray toConstruct(").append(typeName).append(" object)\n\t{\n");
+		sb.append("\t\tTarget t = Target.UNKNOWN;\n");
+		sb.append("\t\tCArray array = new CArray(t);\n");
+		for(VariableElement field: fields)
+		{
+			String name = field.getSimpleName().toString();
+			sb.append("\t\tarray.set(\"").append(name).append("\", ")
+					.append(toConstruct(field.asType(), "object." + name)).append(", t);\n");
+		}
+		sb.append("\t\treturn array;\n\t}\n\n");
+
+		//fromConstruct
+		sb.append("\tpublic ").append(typeName).append(" fromConstruct(CArray array)\n\t{\n");
+		if(hasNoArgsConstructor(type))
+		{
+			sb.append("\t\tTarget t = Target.UNKNOWN;\n");
+			sb.append("\t\t").append(typeName).append(" object = new ").append(typeName).append("();\n");
+			sb.append("\t\tConstruct c;\n");
+			for(VariableElement field: fields)
+			{
+				if(field.getModifiers().contains(Modifier.FINAL)) continue;
+				String name = field.getSimpleName().toString();
+				sb.append("\t\tif(array.containsKey(\"").append(name).append("\"))\n\t\t{\n");
+				sb.append("\t\t\tc = array.get(\"").append(name).append("\", t);\n");
+				if(field.asType().getKind().isPrimitive())
+				{
+					appendPrimitive(sb, field, typeName);
+				}
+				else
+				{
+					sb.append("\t\t\tobject.").append(name).append(" = ").append(fromConstruct(field.asType(), "c")).append(";\n");
+				}
+				sb.append("\t\t}\n");
+			}
+			sb.append("\t\treturn object;\n");
+		}
+		else
+		{
+			sb.append("\t\treturn null;\n");
+		}
+		sb.append("\t}\n");
+
+		sb.append("}\n");
+
+		try(Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())
+		{
+			writer.write(sb.toString());
+		}
+	}
+
+	/**
+	 * Gets the name of a class, including the classes it's nested in, separated by underscores.
+	 */
+	private static String flatName(TypeElement type)
+	{
+		String name = type.getSimpleName().toString();
+		Element enclosing = type.getEnclosingElement();
+		while(enclosing instanceof TypeElement)
+		{
+			name = enclosing.getSimpleName() + "_" + name;
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name;
+	}
+
+	/**
+	 * Checks if a class can be created with <code>new Type()</code> from its own package.
+	 */
+	private static boolean hasNoArgsConstructor(TypeElement type)
+	{
+		if(type.getModifiers().contains(Modifier.ABSTRACT)) return false;
+		if(type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) return false;
+
+		for(ExecutableElement constructor: ElementFilter.constructorsIn(type.getEnclosedElements()))
+		{
+			if(constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String toConstruct(TypeMirror type, String value)
+	{
+		switch(type.getKind())
+		{
+			case LONG: case INT: case SHORT: case BYTE:
+				return "new CInt(" + value + ", t)";
+			case DOUBLE: case FLOAT:
+				return "new CDouble(" + value + ", t)";
+			case BOOLEAN:
+				return "CBoolean.get(" + value + ")";
+			case CHAR:
+				return "new CString(" + value + ", t)";
+		}
+		if(isString(type))
+		{
+			return "(" + value + " == null ? CNull.NULL : new CString(" + value + ", t))";
+		}
+		return "CommandHelper.toConstruct(" + value + ")";
+	}
+
+	/**
+	 * Appends the statements setting a primitive field from the construct <code>c</code>.
+	 * Constructs of the field's own type are read and assigned directly, without boxing; anything else goes through
+	 * <code>fromConstruct()</code>, and a construct that can't be converted fails with an error naming the field
+	 * instead of unboxing null.
+	 */
+	private static void appendPrimitive(StringBuilder sb, VariableElement field, String typeName)
+	{
+		String name = field.getSimpleName().toString();
+		TypeMirror type = field.asType();
+
+		String check;
+		String read;
+		String box;
+		switch(type.getKind())
+		{
+			case LONG: check = "CInt"; read = "((CInt)c).getInt()"; box = "Long"; break;
+			case INT: check = "CInt"; read = "(int)((CInt)c).getInt()"; box = "Integer"; break;
+			case SHORT: check = "CInt"; read = "(short)((CInt)c).getInt()"; box = "Short"; break;
+			case BYTE: check = "CInt"; read = "(byte)((CInt)c).getInt()"; box = "Byte"; break;
+			case DOUBLE: check = "CDouble"; read = "((CDouble)c).getDouble()"; box = "Double"; break;
+			case FLOAT: check = "CDouble"; read = "(float)((CDouble)c).getDouble()"; box = "Float"; break;
+			case BOOLEAN: check = "CBoolean"; read = "((CBoolean)c).getBoolean()"; box = "Boolean"; break;
+			default: check = null; read = null; box = "Character"; break;
+		}
+
+		String indent = "\t\t\t";
+		if(check != null)
+		{
+			sb.append("\t\t\tif(c instanceof ").append(check).append(")\n\t\t\t{\n");
+			sb.append("\t\t\t\tobject.").append(name).append(" = ").append(read).append(";\n");
+			sb.append("\t\t\t}\n\t\t\telse\n\t\t\t{\n");
+			indent = "\t\t\t\t";
+		}
+
+		sb.append(indent).append(box).append(" value = CommandHelper.fromConstruct(c, ").append(type).append(".class);\n");
+		sb.append(indent).append("if(value == null)\n").append(indent).append("{\n");
+		sb.append(indent).append("\tthrow new IllegalArgumentException(\"Can't convert \" + c.getClass().getSimpleName() + \" to the ")
+				.append(type).append(" field ").append(name).append(" of ").append(typeName).append("\");\n");
+		sb.append(indent).append("}\n");
+		sb.append(indent).append("object.").append(name).append(" = value;\n");
+
+		if(check != null)
+		{
+			sb.append("\t\t\t}\n");
+		}
+	}
+
+	private String fromConstruct(TypeMirror type, String c)
+	{
+		if(isString(type))
+		{
+			return c + " instanceof CString ? " + c + ".val() : CommandHelper.fromConstruct(" + c + ", String.class)";
+		}
+		String erasure = processingEnv.getTypeUtils().erasure(type).toString();
+		return "(" + erasure + ")CommandHelper.fromConstruct(" + c + ", " + erasure + ".class)";
+	}
+
+	private static boolean isString(TypeMirror type)
+	{
+		return type.getKind() == TypeKind.DECLARED && type.toString().equals("java.lang.String");
+	}
+}
@@ -0,0 +1,76 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Procedure;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AutoIncludesTest extends HeadlessTestCase
+{
+	@Test
+	public void reusesTheCachedProcedures()
+	{
+		AutoIncludes.invalidate();
+		assertSame(AutoIncludes.getProcedures(), AutoIncludes.getProcedures());
+	}
+
+	@Test
+	public void keepsProceduresDefinedByScripts() throws Exception
+	{
+		MSEnvironment environment = new MSEnvironment();
+		new MethodScript("proc(_twice, @x, return(multiply(@x, 2)))").execute(environment);
+
+		//registering the auto includes again on the next execute doesn't replace the environment's own procedures
+		assertEquals("8", new MethodScript("_twice(4)").execute(environment).val());
+		assertNotNull(environment.procedures.get("_twice"));
+	}
+
+	@Test
+	public void registersEveryCachedProcedure()
+	{
+		MSEnvironment environment = new MSEnvironment();
+		AutoIncludes.register(environment);
+		for(String name: AutoIncludes.getProcedures().keySet())
+		{
+			assertNotNull(environment.procedures.get(name));
+		}
+	}
+
+	private static Procedure procedure(String name) throws Exception
+	{
+		MSEnvironment scratch = new MSEnvironment();
+		new MethodScript("proc(" + name + ", return('" + name + "'))").execute(scratch);
+		return scratch.procedures.get(name);
+	}
+
+	@Test
+	public void replacesTheProceduresAttachedUnderATag() throws Exception
+	{
+		Map<String, Procedure> first = Collections.singletonMap("_old", procedure("_old"));
+		Map<String, Procedure> second = Collections.singletonMap("_new", procedure("_new"));
+
+		LayeredProcedureMap map = new LayeredProcedureMap();
+		map.attach(AutoIncludes.class, first);
+		map.attach(AutoIncludes.class, first);
+		assertEquals(1, map.size());
+
+		map.attach(AutoIncludes.class, second);
+		assertNull(map.get("_old"));
+		assertNotNull(map.get("_new"));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void ownProceduresTakePrecedenceOverAttachedOnes() throws Exception
+	{
+		Procedure own = procedure("_shared");
+		LayeredProcedureMap map = new LayeredProcedureMap();
+		map.put("_shared", own);
+
+		map.attach(AutoIncludes.class, Collections.singletonMap("_shared", procedure("_shared")));
+		assertSame(own, map.get("_shared"));
+	}
+}
@@ -0,0 +1,97 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentEnvironmentTest extends HeadlessTestCase
+{
+	@Test
+	public void copiesStayConcurrent()
+	{
+		MSEnvironment env = MSEnvironment.concurrent();
+		assertTrue(env.isConcurrent());
+		assertTrue(new MSEnvironment(env).isConcurrent());
+		assertFalse(new MSEnvironment().isConcurrent());
+	}
+
+	@Test
+	public void sharesVariablesBetweenThreads() throws Exception
+	{
+		final MSEnvironment env = MSEnvironment.concurrent();
+		env.variables.set("shared", new CInt(7, Target.UNKNOWN));
+
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<?>> futures = new ArrayList<>();
+			for(int n = 0; n < threads; n++)
+			{
+				final int thread = n;
+				futures.add(executor.submit(() -> {
+					start.await();
+					for(int i = 0; i < 500; i++)
+					{
+						env.variables.set("t" + thread + "_" + i, new CInt(i, Target.UNKNOWN));
+						assertEquals("7", env.variables.get("shared").val());
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for(Future<?> future: futures) future.get(30, TimeUnit.SECONDS);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		int written = 0;
+		for(String name: env.variables.toMap().keySet())
+		{
+			if(name.startsWith("@t")) written++;
+		}
+		assertEquals(threads * 500, written);
+	}
+
+	@Test
+	public void sharesProceduresBetweenScripts() throws Exception
+	{
+		MSEnvironment env = MSEnvironment.concurrent();
+		new MethodScript("proc(_double, @x, return(@x * 2))").execute(env);
+
+		MSEnvironment copy = new MSEnvironment(env);
+		assertEquals("10", new MethodScript("_double(5)").execute(copy).val());
+	}
+
+	@Test
+	public void createsDefaultEnvironmentsFromSeveralThreads() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<MSEnvironment>> futures = new ArrayList<>();
+			for(int n = 0; n < 16; n++) futures.add(executor.submit(MSEnvironment::new));
+			for(Future<MSEnvironment> future: futures)
+			{
+				assertNotNull(future.get(30, TimeUnit.SECONDS).getHandle());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
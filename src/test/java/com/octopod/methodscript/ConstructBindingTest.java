@@ -0,0 +1,54 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConstructBindingTest extends HeadlessTestCase
+{
+	public static class Player
+	{
+		private String name;
+		private int level;
+		private double health;
+		private boolean online;
+
+		public Player() {}
+
+		Player(String name, int level, double health, boolean online)
+		{
+			this.name = name;
+			this.level = level;
+			this.health = health;
+			this.online = online;
+		}
+	}
+
+	@Test
+	public void convertsFieldsBothWays()
+	{
+		CArray array = (CArray)CommandHelper.toConstruct(new Player("steve", 12, 19.5, true));
+		assertEquals("steve", array.get("name", Target.UNKNOWN).val());
+		assertEquals("12", array.get("level", Target.UNKNOWN).val());
+		assertEquals("true", array.get("online", Target.UNKNOWN).val());
+
+		Player player = CommandHelper.fromConstruct(array, Player.class);
+		assertEquals("steve", player.name);
+		assertEquals(12, player.level);
+		assertEquals(19.5, player.health, 0);
+		assertTrue(player.online);
+	}
+
+	@Test
+	public void cachesBindingsPerClass()
+	{
+		ConstructBinding binding = ConstructBinding.of(Player.class);
+		assertSame(binding, ConstructBinding.of(Player.class));
+		assertEquals(4, binding.properties.size());
+		assertNotNull(binding.get("level"));
+		assertNull(binding.get("missing"));
+		assertTrue(binding.newInstance() instanceof Player);
+	}
+}
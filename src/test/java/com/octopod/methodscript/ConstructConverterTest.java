@@ -0,0 +1,52 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConstructConverterTest extends HeadlessTestCase
+{
+	private static final Target t = Target.UNKNOWN;
+
+	@Test
+	public void convertsArraysAndCollections()
+	{
+		CArray array = (CArray)CommandHelper.toConstruct(new Object[]{"a", 1, 2.5});
+		assertEquals(3, array.size());
+		assertEquals("a", array.get(0, t).val());
+		assertEquals("1", array.get(1, t).val());
+
+		CArray list = (CArray)CommandHelper.toConstruct(Arrays.asList(1, 2, 3, 4));
+		assertEquals(4, list.size());
+		assertEquals("4", list.get(3, t).val());
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("name", "steve");
+		map.put("scores", Arrays.asList(10, 20));
+		CArray associative = (CArray)CommandHelper.toConstruct(map);
+		assertEquals("steve", associative.get("name", t).val());
+		assertEquals(2, ((CArray)associative.get("scores", t)).size());
+	}
+
+	@Test
+	public void keepsSharedAndCyclicReferences()
+	{
+		List<Object> list = new ArrayList<>();
+		list.add("a");
+		list.add(list);
+
+		CArray array = (CArray)CommandHelper.toConstruct(list);
+		assertEquals(2, array.size());
+		Construct inner = array.get(1, t);
+		assertSame(array, inner);
+	}
+}
@@ -0,0 +1,63 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExecuteBatchTest extends HeadlessTestCase
+{
+	private static BindingSource numbers(int size)
+	{
+		Construct[] values = new Construct[size];
+		for(int i = 0; i < size; i++) values[i] = new CInt(i, Target.UNKNOWN);
+		Map<String, Construct[]> columns = Collections.singletonMap("@n", values);
+		return BindingSource.columns(columns);
+	}
+
+	@Test
+	public void returnsResultsInRowOrder() throws Exception
+	{
+		MethodScript script = new MethodScript("multiply(@n, 2)");
+		List<Construct> results = script.executeBatch(numbers(100), null);
+		assertEquals(100, results.size());
+		for(int i = 0; i < 100; i++)
+		{
+			assertEquals(String.valueOf(i * 2), results.get(i).val());
+		}
+	}
+
+	@Test
+	public void doesntDeadlockWhenCalledFromItsOwnExecutor() throws Exception
+	{
+		final MethodScript script = new MethodScript("add(@n, 1)");
+		final ScriptExecutor executor = new ScriptExecutor(1, 16, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			//the only thread of the executor is busy running the batch itself
+			final int[] count = new int[1];
+			executor.submit(() -> {
+				script.executeBatch(numbers(10), null, (result, row) -> {
+					synchronized(count)
+					{
+						count[0]++;
+					}
+				}, executor, 4);
+				return null;
+			}).get(10, TimeUnit.SECONDS);
+
+			assertEquals(10, count[0]);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.Construct;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExecutionBudgetTest extends HeadlessTestCase
+{
+	@Test
+	public void stopsScriptsOverBudget() throws Exception
+	{
+		MethodScript script = new MethodScript("while(true, null)");
+		MSEnvironment environment = new MSEnvironment();
+		try
+		{
+			script.execute(environment, null, ExecutionBudget.ofWallTime(50, TimeUnit.MILLISECONDS));
+			fail("the script should have gone over budget");
+		}
+		catch(BudgetExceededException e)
+		{
+			assertEquals(BudgetExceededException.Limit.WALL_TIME, e.getLimit());
+		}
+
+		//only the execution was interrupted, so the environment can still be used
+		assertEquals("2", new MethodScript("add(1, 1)").execute(environment).val());
+	}
+
+	@Test
+	public void keepsResultsOfScriptsWithinBudget() throws Exception
+	{
+		MethodScript script = new MethodScript("add(1, 1)");
+		MSEnvironment environment = new MSEnvironment();
+		for(int i = 0; i < 100; i++)
+		{
+			assertEquals("2", script.execute(environment, null, ExecutionBudget.ofWallTime(1, TimeUnit.SECONDS)).val());
+		}
+	}
+
+	@Test
+	public void runsAsyncScriptsConcurrentlyInOneEnvironment() throws Exception
+	{
+		MSEnvironment environment = MSEnvironment.concurrent();
+		ScriptExecutor executor = new ScriptExecutor(2, 16, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			CompletableFuture<Construct> first = new MethodScript("@first = 1 while(true, null)").executeAsync(environment, null, executor);
+			Thread.sleep(100);
+
+			CompletableFuture<Construct> second = new MethodScript("@second = 2 add(1, 1)").executeAsync(environment, null, executor);
+			assertEquals("2", second.get(10, TimeUnit.SECONDS).val());
+			assertFalse(first.isDone());
+
+			first.cancel(true);
+			try
+			{
+				first.get(1, TimeUnit.SECONDS);
+			}
+			catch(CancellationException e) {}
+
+			//cancelling the first script didn't interrupt the environment itself
+			assertEquals("3", new MethodScript("add(@first, @second)").executeAsync(environment, null, executor)
+					.get(10, TimeUnit.SECONDS).val());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void stopsOnlyTheScriptOverBudget() throws Exception
+	{
+		MSEnvironment environment = MSEnvironment.concurrent();
+		ScriptExecutor executor = new ScriptExecutor(2, 16, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			CompletableFuture<Construct> limited = executor.execute(new MethodScript("while(true, null)"), environment, null,
+					ExecutionBudget.ofWallTime(100, TimeUnit.MILLISECONDS));
+			CompletableFuture<Construct> unlimited = executor.execute(new MethodScript("@i = 0 while(@i < 20000, @i++) return(@i)"),
+					environment, null);
+
+			try
+			{
+				limited.get(10, TimeUnit.SECONDS);
+				fail("the script should have gone over budget");
+			}
+			catch(ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof BudgetExceededException);
+			}
+			assertEquals("20000", unlimited.get(30, TimeUnit.SECONDS).val());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
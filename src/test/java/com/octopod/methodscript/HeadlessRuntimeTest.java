@@ -0,0 +1,49 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.commandhelper.CommandHelperFileLocations;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class HeadlessRuntimeTest extends HeadlessTestCase
+{
+	@Test
+	public void installsIntoADirectory()
+	{
+		assertTrue(HeadlessRuntime.isInstalled());
+		File directory = HeadlessRuntime.getDirectory();
+		assertNotNull(directory);
+		assertTrue(directory.isDirectory());
+		assertTrue(CommandHelperFileLocations.getDefault().getProfilesFile().exists());
+	}
+
+	@Test
+	public void installingAgainDoesNothing()
+	{
+		File directory = HeadlessRuntime.getDirectory();
+		HeadlessRuntime.install();
+		HeadlessRuntime.install(new File(directory, "other"));
+		assertSame(directory, HeadlessRuntime.getDirectory());
+		assertFalse(new File(directory, "other").exists());
+	}
+
+	@Test
+	public void runsScriptsWithoutAServer() throws Exception
+	{
+		assertEquals("3", new MethodScript("add(1, 2)").execute(new MSEnvironment()).val());
+
+		MSEnvironment env = new MSEnvironment();
+		new MethodScript("@x = 'a' . 'b'").execute(env);
+		assertEquals("ab", env.variables.get("@x").val());
+	}
+
+	@Test
+	public void stoppingKeepsTheRuntimeInstalled() throws Exception
+	{
+		HeadlessRuntime.stop();
+		assertTrue(HeadlessRuntime.isInstalled());
+		assertEquals("2", new MethodScript("1 + 1").execute(new MSEnvironment()).val());
+	}
+}
@@ -0,0 +1,16 @@
+package com.octopod.methodscript;
+
+import org.junit.BeforeClass;
+
+/**
+ * Base class of tests that compile or execute MethodScript without a server.
+ * Installs the headless runtime once, before the first test class that needs it.
+ */
+public abstract class HeadlessTestCase
+{
+	@BeforeClass
+	public static void installRuntime()
+	{
+		HeadlessRuntime.install();
+	}
+}
@@ -0,0 +1,82 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CClassType;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LayeredVariableListTest
+{
+	private static IVariable var(String name, long value)
+	{
+		return new IVariable(CClassType.AUTO, name, new CInt(value, Target.UNKNOWN), Target.UNKNOWN);
+	}
+
+	@Test
+	public void clonesShareVariablesButNotWrites()
+	{
+		LayeredVariableList list = new LayeredVariableList();
+		list.set(var("@a", 1));
+
+		LayeredVariableList copy = list.clone();
+		assertEquals("1", copy.get("@a", Target.UNKNOWN).val());
+
+		copy.set(var("@a", 2));
+		copy.set(var("@b", 3));
+		list.set(var("@c", 4));
+
+		assertEquals("1", list.get("@a", Target.UNKNOWN).val());
+		assertFalse(list.has("@b"));
+		assertEquals("2", copy.get("@a", Target.UNKNOWN).val());
+		assertFalse(copy.has("@c"));
+	}
+
+	@Test
+	public void removingALayeredVariableOnlyHidesIt()
+	{
+		LayeredVariableList list = new LayeredVariableList();
+		list.set(var("@a", 1));
+		LayeredVariableList copy = list.clone();
+
+		copy.remove("@a");
+		assertFalse(copy.has("@a"));
+		assertFalse(copy.keySet().contains("@a"));
+		assertTrue(list.has("@a"));
+
+		copy.set(var("@a", 5));
+		assertEquals("5", copy.get("@a", Target.UNKNOWN).val());
+	}
+
+	@Test
+	public void flattensDeepChains()
+	{
+		LayeredVariableList list = new LayeredVariableList();
+		for(int i = 0; i < 20; i++)
+		{
+			list.set(var("@v" + i, i));
+			list = list.clone();
+			assertTrue(list.freeze().depth <= 9);
+		}
+
+		for(int i = 0; i < 20; i++)
+		{
+			assertEquals(String.valueOf(i), list.get("@v" + i, Target.UNKNOWN).val());
+		}
+		assertEquals(20, list.toMap().size());
+	}
+
+	@Test
+	public void copiesPlainLists()
+	{
+		MSVariableList plain = new MSVariableList();
+		plain.set("a", new CInt(1, Target.UNKNOWN));
+
+		LayeredVariableList list = new LayeredVariableList(plain.handle);
+		plain.set("a", new CInt(2, Target.UNKNOWN));
+
+		assertEquals("1", list.get("@a", Target.UNKNOWN).val());
+	}
+}
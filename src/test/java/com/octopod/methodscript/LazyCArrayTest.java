@@ -0,0 +1,55 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LazyCArrayTest extends HeadlessTestCase
+{
+	private static final Target t = Target.UNKNOWN;
+
+	private static MSEnvironment withArray(Object... values)
+	{
+		MSEnvironment environment = new MSEnvironment();
+		environment.variables.set("@a", CommandHelper.toLazyConstruct(Arrays.asList(values)));
+		return environment;
+	}
+
+	@Test
+	public void convertsElementsWhenRead()
+	{
+		CArray array = CommandHelper.toLazyConstruct(Arrays.asList("a", 2, 3.5));
+		assertEquals(3, array.size());
+		assertEquals("a", array.get(0, t).val());
+		assertEquals("{a, 2, 3.5}", array.val());
+	}
+
+	@Test
+	public void arrayRemoveSeesConvertedElements() throws Exception
+	{
+		MSEnvironment environment = withArray("a", "b", "c");
+		assertEquals("b", new MethodScript("array_remove(@a, 1)").execute(environment).val());
+		assertEquals("{a, c}", new MethodScript("@a").execute(environment).val());
+	}
+
+	@Test
+	public void arraySortSeesConvertedElements() throws Exception
+	{
+		MSEnvironment environment = withArray(3, 1, 2);
+		new MethodScript("array_sort(@a)").execute(environment);
+		assertEquals("{1, 2, 3}", new MethodScript("@a").execute(environment).val());
+	}
+
+	@Test
+	public void arrayDeepCloneSeesConvertedElements() throws Exception
+	{
+		MSEnvironment environment = withArray("x", Arrays.asList(1, 2));
+		CArray clone = (CArray)new MethodScript("array_deep_clone(@a)").execute(environment);
+		assertEquals("x", clone.get(0, t).val());
+		assertEquals(2, ((CArray)clone.get(1, t)).size());
+	}
+}
@@ -0,0 +1,96 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MSEnvironmentPoolTest extends HeadlessTestCase
+{
+	@Test
+	public void resetsEnvironmentsToTheTemplate() throws Exception
+	{
+		MSEnvironment template = new MSEnvironment();
+		new MethodScript("proc(_greet, return('hello'))").execute(template);
+		template.variables.set("@name", new CString("steve", Target.UNKNOWN));
+
+		MSEnvironmentPool pool = new MSEnvironmentPool(template, 1, MSEnvironmentPool.AcquirePolicy.BLOCK, 0, TimeUnit.MILLISECONDS);
+
+		MSEnvironment env = pool.acquire();
+		new MethodScript("proc(_extra, return(1)) @name = 'alex'").execute(env);
+		env.procedures.handle.remove("_greet");
+		assertNull(env.procedures.get("_greet"));
+		pool.release(env);
+
+		env = pool.acquire();
+		assertNotNull(env.procedures.get("_greet"));
+		assertNull(env.procedures.get("_extra"));
+		assertEquals("steve", env.variables.get("@name").val());
+		assertEquals("hello", new MethodScript("_greet()").execute(env).val());
+		pool.release(env);
+	}
+
+	@Test
+	public void restoresTheTemplateVariablesFromASnapshot() throws Exception
+	{
+		MSEnvironment template = new MSEnvironment();
+		template.variables.set("@name", new CString("steve", Target.UNKNOWN));
+		MSEnvironmentPool pool = new MSEnvironmentPool(template, 1, MSEnvironmentPool.AcquirePolicy.BLOCK, 0, TimeUnit.MILLISECONDS);
+		template.variables.set("@late", new CString("ignored", Target.UNKNOWN));
+
+		for(int i = 0; i < 3; i++)
+		{
+			MSEnvironment env = pool.acquire();
+			assertEquals("steve", env.variables.get("@name").val());
+			assertFalse(env.variables.toMap().containsKey("@late"));
+			assertFalse(env.variables.toMap().containsKey("@run"));
+
+			new MethodScript("@run = 1 @name = 'alex'").execute(env);
+			pool.release(env);
+		}
+	}
+
+	@Test
+	public void leasesEachEnvironmentOnce()
+	{
+		MSEnvironmentPool pool = new MSEnvironmentPool(2, MSEnvironmentPool.AcquirePolicy.FAIL_FAST);
+		MSEnvironment a = pool.acquire();
+		MSEnvironment b = pool.acquire();
+		assertNotSame(a, b);
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(2, pool.getLeasedCount());
+
+		try
+		{
+			pool.acquire();
+			fail("the pool is empty");
+		}
+		catch(IllegalStateException e) {}
+
+		pool.release(a);
+		assertSame(a, pool.acquire());
+
+		try
+		{
+			pool.release(new MSEnvironment());
+			fail("the environment isn't from this pool");
+		}
+		catch(IllegalArgumentException e) {}
+	}
+
+	@Test
+	public void timesOutWhenBlocking()
+	{
+		MSEnvironmentPool pool = new MSEnvironmentPool(new MSEnvironment(), 1, MSEnvironmentPool.AcquirePolicy.BLOCK, 50, TimeUnit.MILLISECONDS);
+		pool.acquire();
+		try
+		{
+			pool.acquire();
+			fail("the pool is empty");
+		}
+		catch(IllegalStateException e) {}
+	}
+}
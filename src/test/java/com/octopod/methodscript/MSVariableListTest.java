@@ -0,0 +1,109 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CNull;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MSVariableListTest
+{
+	private static CInt i(long value)
+	{
+		return new CInt(value, Target.UNKNOWN);
+	}
+
+	private static MSVariableList plain()
+	{
+		return new MSVariableList(new IVariableList(), Target.UNKNOWN);
+	}
+
+	private static MSVariableList layered()
+	{
+		return new MSVariableList(new LayeredVariableList(), Target.UNKNOWN);
+	}
+
+	@Test
+	public void setsAndReadsMaps()
+	{
+		for(MSVariableList list: new MSVariableList[]{plain(), layered()})
+		{
+			Map<String, Construct> map = new HashMap<>();
+			map.put("a", i(1));
+			map.put("@b", i(2));
+			list.set(map);
+
+			Map<String, Construct> read = list.toMap();
+			assertEquals(2, read.size());
+			assertEquals("1", read.get("@a").val());
+			assertEquals("2", read.get("@b").val());
+			assertEquals(2, list.toList().size());
+		}
+	}
+
+	@Test
+	public void clearsEveryVariable()
+	{
+		for(MSVariableList list: new MSVariableList[]{plain(), layered()})
+		{
+			for(int n = 0; n < 50; n++) list.set("v" + n, i(n));
+			list.clear();
+			assertTrue(list.toMap().isEmpty());
+			assertSame(CNull.NULL, list.get("v0"));
+		}
+	}
+
+	@Test
+	public void mergesAnotherList()
+	{
+		MSVariableList list = plain();
+		list.set("a", i(1));
+		MSVariableList other = layered();
+		other.set("a", i(2));
+		other.set("b", i(3));
+
+		list.merge(other);
+		assertEquals("2", list.get("a").val());
+		assertEquals("3", list.get("b").val());
+	}
+
+	@Test
+	public void restoresSnapshots()
+	{
+		for(MSVariableList list: new MSVariableList[]{plain(), layered()})
+		{
+			list.set("a", i(1));
+			MSVariableList.Snapshot snapshot = list.snapshot();
+
+			for(int run = 0; run < 3; run++)
+			{
+				list.set("a", i(10 + run));
+				list.set("b", i(run));
+				list.restore(snapshot);
+
+				assertEquals("1", list.get("a").val());
+				assertSame(CNull.NULL, list.get("b"));
+				assertEquals(1, list.toMap().size());
+			}
+		}
+	}
+
+	@Test
+	public void restoresSnapshotsIntoOtherKindsOfLists()
+	{
+		MSVariableList from = layered();
+		from.set("a", i(1));
+		MSVariableList to = plain();
+		to.set("b", i(2));
+
+		to.restore(from.snapshot());
+		assertEquals("1", to.get("a").val());
+		assertSame(CNull.NULL, to.get("b"));
+	}
+}
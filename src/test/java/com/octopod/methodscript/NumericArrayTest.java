@@ -0,0 +1,51 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NumericArrayTest extends HeadlessTestCase
+{
+	private static final Target t = Target.UNKNOWN;
+
+	private static CArray mixed()
+	{
+		return new CArray(t, new CInt(1, t), new CDouble(2.75, t), new CInt(-3, t));
+	}
+
+	@Test
+	public void convertsBetweenNumericTypes()
+	{
+		long[] longs = CommandHelper.fromConstruct(mixed(), long[].class);
+		assertArrayEquals(new long[]{1, 2, -3}, longs);
+
+		int[] ints = CommandHelper.fromConstruct(mixed(), int[].class);
+		assertArrayEquals(new int[]{1, 2, -3}, ints);
+
+		double[] doubles = CommandHelper.fromConstruct(mixed(), double[].class);
+		assertEquals(3, doubles.length);
+		assertEquals(1.0, doubles[0], 0);
+		assertEquals(2.75, doubles[1], 0);
+		assertEquals(-3.0, doubles[2], 0);
+	}
+
+	@Test
+	public void namesTheElementThatIsntANumber()
+	{
+		CArray array = new CArray(t, new CInt(1, t), new CString("two", t));
+		try
+		{
+			CommandHelper.fromConstruct(array, long[].class);
+			fail("a string isn't a number");
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("element 1"));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.ParseTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ParseTreeCacheTest extends HeadlessTestCase
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void loadsStoredTrees() throws Exception
+	{
+		ParseTreeCache cache = new ParseTreeCache(folder.getRoot().toPath());
+		ParseTree tree = CommandHelper.compileRaw("concat('a', @b, 1, 2.5, true, null)", false);
+
+		assertTrue(cache.store("abc", tree));
+		ParseTree loaded = cache.load("abc", new File("test.ms"));
+		assertNotNull(loaded);
+		assertEquals(tree.toString(), loaded.toString());
+		assertNull(cache.load("missing", new File("test.ms")));
+	}
+
+	@Test
+	public void treatsBadLengthsAsMisses() throws Exception
+	{
+		Path directory = folder.getRoot().toPath();
+		ParseTreeCache cache = new ParseTreeCache(directory);
+		assertTrue(cache.store("abc", CommandHelper.compileRaw("add(1, 2)", false)));
+
+		//overwrite the entry with a header whose version string claims to be far longer than the file
+		Path entry = directory.resolve("abc.mst");
+		byte[] bytes = Files.readAllBytes(entry);
+		try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(entry)))
+		{
+			out.write(bytes, 0, 8);
+			out.writeInt(Integer.MAX_VALUE);
+		}
+		assertNull(cache.load("abc", new File("test.ms")));
+	}
+
+	@Test
+	public void storingIsBestEffort() throws Exception
+	{
+		Path directory = folder.newFolder("cache").toPath();
+		ParseTreeCache cache = new ParseTreeCache(directory);
+		Files.delete(directory);
+
+		assertFalse(cache.store("abc", CommandHelper.compileRaw("add(1, 2)", false)));
+	}
+}
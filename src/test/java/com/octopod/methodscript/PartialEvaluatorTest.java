@@ -0,0 +1,71 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PartialEvaluatorTest extends HeadlessTestCase
+{
+	private static boolean hasVariable(ParseTree tree, String name)
+	{
+		if(tree.getData() instanceof IVariable && ((IVariable)tree.getData()).getVariableName().equals(name)) return true;
+		for(ParseTree child: tree.getChildren())
+		{
+			if(hasVariable(child, name)) return true;
+		}
+		return false;
+	}
+
+	private static boolean hasFunction(ParseTree tree, String name)
+	{
+		if(tree.getData() instanceof CFunction && tree.getData().val().equals(name)) return true;
+		for(ParseTree child: tree.getChildren())
+		{
+			if(hasFunction(child, name)) return true;
+		}
+		return false;
+	}
+
+	@Test
+	public void substitutesVariablesAndPrunesIf() throws Exception
+	{
+		MethodScript script = new MethodScript("if(@debug, concat('debug ', @name), 'quiet')");
+
+		Map<String, Construct> bindings = new HashMap<>();
+		bindings.put("debug", CBoolean.get(true));
+		bindings.put("@name", new CString("steve", Target.UNKNOWN));
+		MethodScript specialized = script.specialize(bindings);
+
+		ParseTree tree = specialized.getParseTree();
+		assertFalse(hasVariable(tree, "@debug"));
+		assertFalse(hasVariable(tree, "@name"));
+		assertFalse(hasFunction(tree, "if"));
+		assertEquals("debug steve", specialized.execute().val());
+
+		//the original tree is left as it was
+		assertTrue(hasVariable(script.getParseTree(), "@debug"));
+	}
+
+	@Test
+	public void leavesAssignedVariablesAlone() throws Exception
+	{
+		MethodScript script = new MethodScript("assign(@name, 'alex') concat('hi ', @name)");
+
+		Map<String, Construct> bindings = new HashMap<>();
+		bindings.put("@name", new CString("steve", Target.UNKNOWN));
+		MethodScript specialized = script.specialize(bindings);
+
+		assertTrue(hasVariable(specialized.getParseTree(), "@name"));
+		assertEquals("hi alex", specialized.execute().val());
+	}
+}
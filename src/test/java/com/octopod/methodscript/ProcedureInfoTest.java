@@ -0,0 +1,51 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.Procedure;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProcedureInfoTest extends HeadlessTestCase
+{
+	@Test
+	public void extractsTheBodyAndParameters() throws Exception
+	{
+		MSEnvironment env = new MSEnvironment();
+		new MethodScript("proc(_add, @a, @b, return(@a + @b))").execute(env);
+		Procedure procedure = env.procedures.get("_add");
+
+		ProcedureInfo info = new ProcedureInfo(procedure);
+		assertSame(procedure, info.getProcedure());
+		assertEquals("_add", info.getName());
+		assertNotNull(info.getTree());
+		assertEquals(2, info.getParameters().size());
+		assertTrue(info.getParameters().containsKey("@a"));
+		assertTrue(info.getParameters().containsKey("@b"));
+
+		assertSame(info.getTree(), CommandHelper.getProcedureTree(procedure));
+		assertEquals(info.getParameters().keySet(), CommandHelper.getProcedureVars(procedure).keySet());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void parametersAreReadOnly() throws Exception
+	{
+		MSEnvironment env = new MSEnvironment();
+		new MethodScript("proc(_one, @a, return(@a))").execute(env);
+		new ProcedureInfo(env.procedures.get("_one")).getParameters().clear();
+	}
+
+	@Test
+	public void extractsEveryProcedureOfAList() throws Exception
+	{
+		MSEnvironment env = new MSEnvironment();
+		new MethodScript("proc(_first, return(1)) proc(_second, @x, return(@x))").execute(env);
+
+		Map<String, ProcedureInfo> info = env.procedures.getInfo();
+		assertEquals("_first", info.get("_first").getName());
+		assertTrue(info.get("_first").getParameters().isEmpty());
+		assertTrue(info.get("_second").getParameters().containsKey("@x"));
+		assertEquals(env.procedures.toMap().keySet(), info.keySet());
+	}
+}
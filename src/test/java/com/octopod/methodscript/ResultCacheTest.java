@@ -0,0 +1,87 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest extends HeadlessTestCase
+{
+	private static final Target t = Target.UNKNOWN;
+
+	@Test
+	public void reusesResultsOfPureScripts() throws Exception
+	{
+		MethodScript script = new MethodScript("array_get(@a, 0)");
+		assertTrue(script.isPure());
+
+		ResultCache cache = new ResultCache();
+		MSEnvironment environment = new MSEnvironment();
+		environment.variables.set("@a", new CArray(t, new CInt(1, t)));
+
+		script.execute(environment, cache);
+		script.execute(environment, cache);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void declaringPurityOnlyAppliesToTheCall() throws Exception
+	{
+		String source = "@b = @a";
+		MethodScript declared = CommandHelper.compile(source, true);
+		MethodScript shared = CommandHelper.compile(source, true);
+		assertSame(declared, shared);
+		assertFalse(declared.isPure());
+
+		ResultCache cache = new ResultCache();
+		MSEnvironment environment = new MSEnvironment();
+		environment.variables.set("@a", new CInt(1, t));
+
+		declared.execute(environment, cache, true);
+		declared.execute(environment, cache, true);
+		assertEquals(1, cache.getHitCount());
+
+		//other holders of the same compiled script still get the detected purity
+		assertFalse(shared.isPure());
+		shared.execute(environment, cache);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void keysArraysByElementType() throws Exception
+	{
+		MethodScript script = new MethodScript("array_get(@a, 0)");
+		ResultCache cache = new ResultCache();
+
+		//both arrays look like {1} as strings
+		MSEnvironment ints = new MSEnvironment();
+		ints.variables.set("@a", new CArray(t, new CInt(1, t)));
+		MSEnvironment strings = new MSEnvironment();
+		strings.variables.set("@a", new CArray(t, new CString("1", t)));
+
+		assertTrue(script.execute(ints, cache) instanceof CInt);
+		assertTrue(script.execute(strings, cache) instanceof CString);
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void copiesNestedArrays() throws Exception
+	{
+		MethodScript script = new MethodScript("array(array(1, 2))");
+		ResultCache cache = new ResultCache();
+
+		Construct first = script.execute(new MSEnvironment(), cache);
+		CArray inner = (CArray)((CArray)first).get(0, t);
+		inner.push(new CInt(3, t));
+
+		Construct second = script.execute(new MSEnvironment(), cache);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, ((CArray)((CArray)second).get(0, t)).size());
+	}
+}
@@ -0,0 +1,50 @@
+package com.octopod.methodscript;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScriptCacheTest extends HeadlessTestCase
+{
+	@Test
+	public void sharesCompiledScriptsBySource() throws Exception
+	{
+		ScriptCache cache = new ScriptCache();
+		MethodScript first = cache.get("add(1, 2)");
+		MethodScript second = cache.get("add(1, 2)");
+		MethodScript other = cache.get("add(2, 1)");
+
+		assertSame(first, second);
+		assertNotSame(first, other);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals("3", second.execute().val());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedScriptsOverTheWeight() throws Exception
+	{
+		//each script is 9 characters long, so only two fit
+		ScriptCache cache = new ScriptCache(20);
+		MethodScript a = cache.get("add(1, 1)");
+		cache.get("add(2, 2)");
+		cache.get("add(1, 1)");
+		cache.get("add(3, 3)");
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.getWeight() <= 20);
+		assertEquals(1, cache.getEvictionCount());
+		assertSame(a, cache.get("add(1, 1)"));
+	}
+
+	@Test
+	public void invalidatesScripts() throws Exception
+	{
+		ScriptCache cache = new ScriptCache();
+		MethodScript first = cache.get("add(1, 2)");
+		cache.invalidate("add(1, 2)");
+		assertEquals(0, cache.size());
+		assertNotSame(first, cache.get("add(1, 2)"));
+	}
+}
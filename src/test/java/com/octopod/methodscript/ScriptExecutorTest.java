@@ -0,0 +1,164 @@
+package com.octopod.methodscript;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ScriptExecutorTest extends HeadlessTestCase
+{
+	@Test
+	public void runsScripts() throws Exception
+	{
+		ScriptExecutor executor = new ScriptExecutor(2, 4, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			MethodScript script = new MethodScript("add(1, 2)");
+			assertEquals("3", executor.execute(script, null, null).get(10, TimeUnit.SECONDS).val());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void rejectsTasksPastMaxPending() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		ScriptExecutor executor = new ScriptExecutor(1, 1, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			CompletableFuture<Object> blocked = executor.submit(() -> {
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e) {}
+				return null;
+			});
+
+			try
+			{
+				executor.submit(() -> "rejected").get(10, TimeUnit.SECONDS);
+				fail("the executor is full");
+			}
+			catch(ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+
+			release.countDown();
+			blocked.get(10, TimeUnit.SECONDS);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void runsOnTheCallerWhenFull() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		ScriptExecutor executor = new ScriptExecutor(1, 1, ScriptExecutor.RejectionPolicy.CALLER_RUNS, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			executor.submit(() -> {
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e) {}
+				return null;
+			});
+
+			final Thread caller = Thread.currentThread();
+			assertSame(caller, executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS));
+			release.countDown();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void holdsThePermitUntilATimedOutTaskFinishes() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(1);
+		ScriptExecutor executor = new ScriptExecutor(1, 4, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			CompletableFuture<Object> future = executor.submit(() -> {
+				//ignores interrupts, like a script stuck in a Java call would
+				while(true)
+				{
+					try
+					{
+						release.await();
+						break;
+					}
+					catch(InterruptedException e) {}
+				}
+				finished.countDown();
+				return null;
+			}, 50, TimeUnit.MILLISECONDS);
+
+			try
+			{
+				future.get(10, TimeUnit.SECONDS);
+				fail("the task should have timed out");
+			}
+			catch(ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertEquals(1, executor.getPendingCount());
+
+			release.countDown();
+			assertTrue(finished.await(10, TimeUnit.SECONDS));
+			for(int i = 0; i < 100 && executor.getPendingCount() > 0; i++) Thread.sleep(10);
+			assertEquals(0, executor.getPendingCount());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void releasesThePermitOfTasksCancelledBeforeStarting() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		ScriptExecutor executor = new ScriptExecutor(1, 4, ScriptExecutor.RejectionPolicy.ABORT, 0, TimeUnit.MILLISECONDS);
+		try
+		{
+			executor.submit(() -> {
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e) {}
+				return null;
+			});
+			CompletableFuture<Object> queued = executor.submit(() -> null);
+			assertEquals(2, executor.getPendingCount());
+
+			queued.cancel(true);
+			assertEquals(1, executor.getPendingCount());
+			release.countDown();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.octopod.methodscript;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScriptMetricsTest extends HeadlessTestCase
+{
+	/**
+	 * Records every event it receives.
+	 */
+	private static class Recorder implements ScriptMetrics
+	{
+		final List<String> events = new ArrayList<>();
+
+		public synchronized void compiled(String source, long nanos)
+		{
+			events.add("compiled " + source);
+		}
+
+		public synchronized void executed(String source, long nanos, long allocatedBytes, Throwable error)
+		{
+			events.add("executed " + source + (error == null ? "" : " with an error"));
+		}
+	}
+
+	@After
+	public void removeSink()
+	{
+		MethodScript.setMetrics(ScriptMetrics.NONE);
+	}
+
+	@Test
+	public void reportsCompilesAndExecutions() throws Exception
+	{
+		Recorder recorder = new Recorder();
+		MethodScript.setMetrics(recorder);
+
+		MethodScript script = new MethodScript("add(1, 2)");
+		script.execute();
+		script.execute();
+
+		assertEquals(3, recorder.events.size());
+		assertEquals("compiled Unknown", recorder.events.get(0));
+		assertEquals("executed Unknown", recorder.events.get(1));
+		assertEquals("executed Unknown", recorder.events.get(2));
+	}
+
+	@Test
+	public void reportsNothingWithoutASink() throws Exception
+	{
+		Recorder recorder = new Recorder();
+		MethodScript.setMetrics(recorder);
+		MethodScript.setMetrics(ScriptMetrics.NONE);
+
+		new MethodScript("add(1, 2)").execute();
+		assertTrue(recorder.events.isEmpty());
+	}
+
+	@Test
+	public void getSourceIsUnknownWithoutAFile() throws Exception
+	{
+		assertEquals("Unknown", new MethodScript("add(1, 2)").getSource());
+	}
+
+	@Test
+	public void histogramsTrackPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500, histogram.getMean(), 1);
+
+		long median = histogram.getValueAtPercentile(50);
+		assertTrue(median + " is too far from 500000", Math.abs(median - 500000) < 500000 * 0.04);
+		assertEquals(0, new LatencyHistogram().getValueAtPercentile(50));
+	}
+
+	@Test
+	public void statsCountInvocationsAndExceptions()
+	{
+		ScriptStats stats = new ScriptStats("test.ms");
+		stats.executed(1000, 10, null);
+		stats.executed(3000, 10, new RuntimeException());
+		stats.compiled(500);
+
+		assertEquals(2, stats.getInvocationCount());
+		assertEquals(1, stats.getExceptionCount());
+		assertEquals(1, stats.getCompileCount());
+		assertEquals(20, stats.getAllocatedBytes());
+		assertEquals(3000, stats.getMaxTime());
+
+		stats.reset();
+		assertEquals(0, stats.getInvocationCount());
+	}
+}
@@ -0,0 +1,157 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigCompileGroupException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ScriptRepositoryTest extends HeadlessTestCase
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path write(Path root, String name, String script) throws Exception
+	{
+		Path file = root.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, script.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void compilesOnlyNewAndChangedScripts() throws Exception
+	{
+		Path root = folder.getRoot().toPath();
+		write(root, "a.ms", "add(1, 1)");
+		Path b = write(root, "sub/b.ms", "add(2, 2)");
+		write(root, "notes.txt", "not a script");
+
+		ScriptRepository repository = new ScriptRepository(root);
+		assertEquals(2, repository.reload().size());
+		assertEquals(2, repository.size());
+		assertEquals("2", repository.get(Paths.get("a.ms")).execute().val());
+
+		//nothing changed
+		assertTrue(repository.reload().isEmpty());
+
+		//touched but identical
+		Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 10000));
+		assertTrue(repository.reload().isEmpty());
+
+		//changed
+		write(root, "sub/b.ms", "add(3, 3)");
+		Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 20000));
+		Set<Path> compiled = repository.reload();
+		assertEquals(1, compiled.size());
+		assertEquals("6", repository.get(Paths.get("sub/b.ms")).execute().val());
+
+		//deleted
+		Files.delete(b);
+		repository.reload();
+		assertNull(repository.get(Paths.get("sub/b.ms")));
+		assertEquals(1, repository.size());
+	}
+
+	@Test
+	public void keepsLoadingPastBrokenScripts() throws Exception
+	{
+		Path root = folder.getRoot().toPath();
+		write(root, "good.ms", "add(1, 1)");
+		Path broken = write(root, "broken.ms", "add(1, ");
+
+		ScriptRepository repository = new ScriptRepository(root);
+		try
+		{
+			repository.reload();
+			fail("a script is broken");
+		}
+		catch(ScriptLoadException e)
+		{
+			assertEquals(1, e.getFailures().size());
+			assertTrue(e.getFailures().containsKey(broken.toAbsolutePath().normalize()));
+		}
+		assertNotNull(repository.get(Paths.get("good.ms")));
+	}
+
+	private static long count(Path directory) throws Exception
+	{
+		try(Stream<Path> files = Files.list(directory))
+		{
+			return files.count();
+		}
+	}
+
+	@Test
+	public void onlyPrunesItsOwnCachedTrees() throws Exception
+	{
+		Path first = folder.newFolder("first").toPath();
+		Path second = folder.newFolder("second").toPath();
+		ParseTreeCache cache = new ParseTreeCache(folder.newFolder("cache").toPath());
+
+		Path a = write(first, "a.ms", "add(1, 1)");
+		write(second, "b.ms", "add(2, 2)");
+
+		ScriptRepository one = new ScriptRepository(first, ForkJoinPool.commonPool(), cache);
+		ScriptRepository two = new ScriptRepository(second, ForkJoinPool.commonPool(), cache);
+		one.reload();
+		two.reload();
+		assertEquals(2, count(cache.getDirectory()));
+
+		//reloading one repository keeps the other's trees
+		one.reload();
+		two.reload();
+		assertEquals(2, count(cache.getDirectory()));
+
+		//a changed script replaces only its own tree
+		write(first, "a.ms", "add(3, 3)");
+		Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 10000));
+		one.reload();
+		assertEquals(2, count(cache.getDirectory()));
+		assertEquals("4", two.get(Paths.get("b.ms")).execute().val());
+	}
+
+	@Test
+	public void recordsRuntimeExceptionsAsFailures() throws Exception
+	{
+		Path root = folder.newFolder("scripts").toPath();
+		write(root, "good.ms", "add(1, 1)");
+		Path bad = write(root, "bad.ms", "add(2, 2)");
+
+		ParseTreeCache cache = new ParseTreeCache(folder.newFolder("cache").toPath())
+		{
+			MethodScript compile(Path file, ByteBuffer bytes, String hash)
+					throws IOException, ConfigCompileException, ConfigCompileGroupException
+			{
+				if(file.endsWith("bad.ms")) throw new IllegalStateException("broken loader");
+				return super.compile(file, bytes, hash);
+			}
+		};
+
+		ScriptRepository repository = new ScriptRepository(root, ForkJoinPool.commonPool(), cache);
+		try
+		{
+			repository.reload();
+			fail("a script failed to load");
+		}
+		catch(ScriptLoadException e)
+		{
+			assertEquals(1, e.getFailures().size());
+			assertTrue(e.getFailures().get(bad.toAbsolutePath().normalize()) instanceof IllegalStateException);
+		}
+		assertNotNull(repository.get(Paths.get("good.ms")));
+	}
+}
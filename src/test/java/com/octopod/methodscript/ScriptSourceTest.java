@@ -0,0 +1,65 @@
+package com.octopod.methodscript;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ScriptSourceTest extends HeadlessTestCase
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(String name, byte[] bytes) throws Exception
+	{
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	@Test
+	public void decodesUtf8AndSkipsTheByteOrderMark() throws Exception
+	{
+		byte[] text = "msg('h\u00e9llo \u2603')".getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = new byte[text.length + 3];
+		bytes[0] = (byte)0xEF;
+		bytes[1] = (byte)0xBB;
+		bytes[2] = (byte)0xBF;
+		System.arraycopy(text, 0, bytes, 3, text.length);
+
+		assertEquals("msg('h\u00e9llo \u2603')", ScriptSource.read(write("bom.ms", bytes).toPath()));
+	}
+
+	@Test
+	public void readsLargeFiles() throws Exception
+	{
+		char[] chars = new char[ScriptSource.MAP_THRESHOLD * 2];
+		Arrays.fill(chars, 'a');
+		String text = new String(chars);
+
+		assertEquals(text, ScriptSource.read(write("large.ms", text.getBytes(StandardCharsets.UTF_8)).toPath()));
+	}
+
+	@Test
+	public void readsEverythingFromReaders() throws Exception
+	{
+		char[] chars = new char[20000];
+		Arrays.fill(chars, 'b');
+		String text = new String(chars);
+		assertEquals(text, ScriptSource.read(new StringReader(text)));
+	}
+
+	@Test
+	public void compilesFiles() throws Exception
+	{
+		File file = write("add.ms", "add(1, 2)".getBytes(StandardCharsets.UTF_8));
+		assertEquals("3", new MethodScript(file).execute().val());
+	}
+}
@@ -0,0 +1,30 @@
+package com.octopod.methodscript;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The benchmarks compare cached and uncached compiles, so the uncached ones must never touch the cache.
+ */
+public class UncachedCompileTest extends HeadlessTestCase
+{
+	@Test
+	public void uncachedCompilesBypassTheCache() throws Exception
+	{
+		ScriptCache cache = CommandHelper.getScriptCache();
+		String script = "add(1, " + System.nanoTime() + ")";
+
+		long misses = cache.getMissCount();
+		long hits = cache.getHitCount();
+		CommandHelper.compileRaw(script, false);
+		CommandHelper.eval(script, null, false);
+		assertEquals(misses, cache.getMissCount());
+		assertEquals(hits, cache.getHitCount());
+
+		CommandHelper.compileRaw(script);
+		CommandHelper.eval(script);
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals(hits + 1, cache.getHitCount());
+	}
+}
@@ -0,0 +1,54 @@
+package com.octopod.methodscript;
+
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CNull;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VarKeyTest
+{
+	@Test
+	public void normalizesNames()
+	{
+		VarKey key = VarKey.of("var");
+		assertEquals("@var", key.getName());
+		assertEquals(key, VarKey.of("@var"));
+		assertEquals(key.hashCode(), VarKey.of("@var").hashCode());
+		assertSame(key.getName(), VarKey.of("@var").getName());
+		assertFalse(key.equals(VarKey.of("other")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyNames()
+	{
+		VarKey.of("");
+	}
+
+	@Test
+	public void readsAndWritesVariables()
+	{
+		VarKey key = VarKey.of("count");
+		MSVariableList[] lists = {
+				new MSVariableList(new IVariableList(), Target.UNKNOWN),
+				new MSVariableList(new LayeredVariableList(), Target.UNKNOWN),
+				new MSVariableList(new ConcurrentVariableList(), Target.UNKNOWN)
+		};
+
+		for(MSVariableList list: lists)
+		{
+			assertFalse(list.has(key));
+			assertSame(CNull.NULL, list.get(key));
+
+			list.set(key, new CInt(5, Target.UNKNOWN));
+			assertTrue(list.has(key));
+			assertEquals("5", list.get(key).val());
+			assertEquals("5", list.get("count").val());
+
+			list.set("@count", new CInt(6, Target.UNKNOWN));
+			assertEquals("6", list.get(key).val());
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.octopod.methodscript.processor;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Target;
+import com.octopod.methodscript.ConstructMarshaller;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MarshallerProcessorTest
+{
+	private static final Target t = Target.UNKNOWN;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Compiles a @Marshalled class with the processor, and loads its generated marshaller.
+	 */
+	@SuppressWarnings("unchecked")
+	private ConstructMarshaller<Object> marshaller(String name, String source) throws Exception
+	{
+		File src = folder.newFile(name + ".java");
+		Files.write(src.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		File out = folder.newFolder("out");
+		File generated = folder.newFolder("generated");
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		int status = compiler.run(null, null, null,
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", MarshallerProcessor.class.getName(),
+				"-s", generated.getPath(),
+				"-d", out.getPath(), src.getPath());
+		assertEquals(0, status);
+
+		ClassLoader loader = new URLClassLoader(new URL[]{out.toURI().toURL()}, getClass().getClassLoader());
+		return (ConstructMarshaller<Object>)loader.loadClass(name + "_ConstructMarshaller").newInstance();
+	}
+
+	@Test
+	public void convertsFieldsBothWays() throws Exception
+	{
+		ConstructMarshaller<Object> marshaller = marshaller("Player",
+				"@com.octopod.methodscript.Marshalled public class Player { public String name; public int level; }");
+
+		CArray array = new CArray(t);
+		array.set("name", new CString("steve", t), t);
+		array.set("level", new CInt(7, t), t);
+
+		Object player = marshaller.fromConstruct(array);
+		assertEquals(7, player.getClass().getField("level").getInt(player));
+		assertEquals("steve", marshaller.toConstruct(player).get("name", t).val());
+	}
+
+	@Test
+	public void namesPrimitiveFieldsThatCantBeConverted() throws Exception
+	{
+		ConstructMarshaller<Object> marshaller = marshaller("Player",
+				"@com.octopod.methodscript.Marshalled public class Player { public int level; }");
+
+		CArray array = new CArray(t);
+		array.set("level", new CArray(t), t);
+		try
+		{
+			marshaller.fromConstruct(array);
+			fail("an array can't be converted to an int");
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("level"));
+		}
+	}
+
+	@Test
+	public void assignsPrimitivesWithoutBoxing() throws Exception
+	{
+		ConstructMarshaller<Object> marshaller = marshaller("Player",
+				"@com.octopod.methodscript.Marshalled public class Player { public int level; public double speed; public char rank; }");
+
+		String source = new String(Files.readAllBytes(new File(folder.getRoot(), "generated/Player_ConstructMarshaller.java").toPath()),
+				StandardCharsets.UTF_8);
+		assertTrue(source, source.contains("object.level = (int)((CInt)c).getInt();"));
+		assertTrue(source, source.contains("object.speed = ((CDouble)c).getDouble();"));
+
+		CArray array = new CArray(t);
+		array.set("level", new CInt(12, t), t);
+		array.set("rank", new CString("A", t), t);
+		Object player = marshaller.fromConstruct(array);
+		assertEquals(12, player.getClass().getField("level").getInt(player));
+		assertEquals('A', player.getClass().getField("rank").getChar(player));
+	}
+}